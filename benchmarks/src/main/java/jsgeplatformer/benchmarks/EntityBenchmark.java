@@ -0,0 +1,113 @@
+package jsgeplatformer.benchmarks;
+
+import br.com.davidbuzatto.jsge.geom.Rectangle;
+import br.com.davidbuzatto.jsge.image.Image;
+import java.awt.Color;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import jsgeplatformer.Animation;
+import jsgeplatformer.Block;
+import jsgeplatformer.EnemyStore;
+import jsgeplatformer.Player;
+import jsgeplatformer.Sprite;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Custo das operações por entidade: testes de colisão das sondas contra
+ * blocos e atualização de animações.
+ * 
+ * @author Prof. Dr. David Buzatto
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 2 )
+@State( Scope.Thread )
+public class EntityBenchmark {
+    
+    @Param( { "1000" } )
+    public int count;
+    
+    private Player player;
+    private EnemyStore enemies;
+    private Block[] blocks;
+    private Animation[] animations;
+    private double time;
+    
+    @Setup( Level.Trial )
+    public void setup() {
+        
+        Sprite blank = new Sprite( new Image( 32, 32 ) );
+        List<Sprite> sprites = List.of( blank, blank, blank, blank );
+        
+        player = new Player(
+            new Rectangle( 64, 64, 32, 40 ), 250, 400, 400, null, Color.BLUE,
+            new Animation( 2, 0.15, sprites ), new Animation( 2, 0.15, sprites ),
+            blank, blank, blank, blank, blank, blank
+        );
+        player.updateCollisionProbes();
+        
+        enemies = new EnemyStore( 32, 32, 150, new Animation( 2, 0.15, sprites ), new Animation( 2, 0.15, sprites ), null );
+        enemies.add( 64, 64 );
+        
+        // metade dos blocos encosta nas entidades, metade não
+        blocks = new Block[count];
+        for ( int i = 0; i < count; i++ ) {
+            blocks[i] = new Block( new Rectangle( 32 + ( i % 4 ) * 16, 32 + ( i % 8 ) * 16, 32, 32 ), null, blank );
+        }
+        
+        animations = new Animation[count];
+        for ( int i = 0; i < count; i++ ) {
+            animations[i] = new Animation( 4, 0.1, sprites );
+        }
+        
+    }
+    
+    @Benchmark
+    public void playerCheckCollision( Blackhole bh ) {
+        for ( Block b : blocks ) {
+            bh.consume( player.checkCollision( b ) );
+        }
+    }
+    
+    @Benchmark
+    public void enemyCheckCollision( Blackhole bh ) {
+        for ( Block b : blocks ) {
+            bh.consume( enemies.checkCollision( 0, b.rect ) );
+        }
+    }
+    
+    @Benchmark
+    public void animationUpdate() {
+        for ( Animation a : animations ) {
+            a.update( 1.0 / 60 );
+        }
+    }
+    
+    /**
+     * Custo de obter o quadro de count entidades a partir do relógio
+     * compartilhado (feito apenas no desenho das entidades visíveis).
+     */
+    @Benchmark
+    public void animationSharedClock( Blackhole bh ) {
+        Animation a = animations[0];
+        time += 1.0 / 60;
+        for ( int i = 0; i < count; i++ ) {
+            bh.consume( a.getFrame( time + i * 0.01 ) );
+        }
+    }
+    
+}
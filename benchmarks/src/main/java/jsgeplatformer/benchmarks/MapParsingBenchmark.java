@@ -0,0 +1,79 @@
+package jsgeplatformer.benchmarks;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import jsgeplatformer.HeadlessSimulation;
+import jsgeplatformer.LevelIO;
+import jsgeplatformer.Levels;
+import jsgeplatformer.World;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Custo de montar o mundo a partir do texto do mapa (processMap) e de ler
+ * a fase nos formatos texto e binário.
+ * 
+ * @author Prof. Dr. David Buzatto
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 2 )
+@State( Scope.Thread )
+public class MapParsingBenchmark {
+    
+    @Param( { "64", "1024", "16384" } )
+    public int columns;
+    
+    @Param( { "100" } )
+    public int enemies;
+    
+    private String map;
+    private World world;
+    private Path binaryFile;
+    
+    @Setup( Level.Trial )
+    public void setup() throws IOException {
+        map = Levels.generate( columns, enemies );
+        world = new HeadlessSimulation( map ).getWorld();
+        binaryFile = Files.createTempFile( "level", ".lvl" );
+        LevelIO.writeBinary( LevelIO.parseText( map ), binaryFile );
+    }
+    
+    @TearDown( Level.Trial )
+    public void tearDown() throws IOException {
+        Files.deleteIfExists( binaryFile );
+    }
+    
+    @Benchmark
+    public World processMap() {
+        world.processMap( map );
+        return world;
+    }
+    
+    @Benchmark
+    public jsgeplatformer.Level readText() throws IOException {
+        return LevelIO.readText( new StringReader( map ) );
+    }
+    
+    @Benchmark
+    public jsgeplatformer.Level readBinary() throws IOException {
+        return LevelIO.readBinary( binaryFile );
+    }
+    
+}
@@ -0,0 +1,102 @@
+package jsgeplatformer.benchmarks;
+
+import br.com.davidbuzatto.jsge.core.engine.EngineFrame;
+import java.util.concurrent.TimeUnit;
+import jsgeplatformer.HeadlessInput;
+import jsgeplatformer.HeadlessSimulation;
+import jsgeplatformer.Levels;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Custo de um frame de simulação e das passadas de resolução de colisão.
+ * 
+ * Os frames são medidos em trechos de FRAMES frames, cada um a partir do
+ * mundo recém-carregado, para que os inimigos medidos sejam os gerados
+ * pelos parâmetros e não os que sobraram depois de milhões de frames.
+ * 
+ * @author Prof. Dr. David Buzatto
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 2 )
+@State( Scope.Thread )
+public class WorldBenchmark {
+    
+    private static final double DELTA = 1.0 / 60;
+    private static final int FRAMES = 600;
+    
+    @Param( { "64", "1024", "16384" } )
+    public int columns;
+    
+    /*
+     * Inimigos empilhados em cada coluna; com 32, a região ativa passa do
+     * limite da atualização paralela.
+     */
+    @Param( { "1", "4", "32" } )
+    public int enemiesPerColumn;
+    
+    @Param( { "false", "true" } )
+    public boolean parallel;
+    
+    private String level;
+    private HeadlessSimulation sim;
+    
+    @Setup( Level.Trial )
+    public void setup() {
+        level = Levels.generateDense( columns, enemiesPerColumn );
+        sim = createSimulation();
+    }
+    
+    private HeadlessSimulation createSimulation() {
+        HeadlessSimulation sim = new HeadlessSimulation( level );
+        sim.getWorld().setParallel( parallel );
+        return sim;
+    }
+    
+    /**
+     * Simulação recriada antes de cada trecho de FRAMES frames.
+     */
+    @State( Scope.Thread )
+    public static class Run {
+        
+        private HeadlessSimulation sim;
+        
+        @Setup( Level.Invocation )
+        public void setup( WorldBenchmark benchmark ) {
+            sim = benchmark.createSimulation();
+        }
+        
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation( FRAMES )
+    public void stepFrame( Run run ) {
+        HeadlessInput input = run.sim.getInput();
+        for ( int frame = 0; frame < FRAMES; frame++ ) {
+            input.setKeyDown( EngineFrame.KEY_RIGHT, ( frame / 300 ) % 2 == 0 );
+            input.setKeyDown( EngineFrame.KEY_LEFT, ( frame / 300 ) % 2 == 1 );
+            input.setKeyDown( EngineFrame.KEY_SPACE, frame % 40 == 0 );
+            run.sim.stepFrame( DELTA );
+        }
+    }
+    
+    @Benchmark
+    public void resolveCollisions() {
+        sim.getWorld().resolveCollisions();
+    }
+    
+}
@@ -1,6 +1,5 @@
 package jsgeplatformer;
 
-import br.com.davidbuzatto.jsge.image.Image;
 import java.util.List;
 
 /**
@@ -14,12 +13,14 @@ public class Animation {
     private int currentFrame;
     private double timeCounter;
     private double timeToNextFrame;
-    private List<Image> images;
+    private double framesPerSecond;
+    private List<Sprite> sprites;
 
-    public Animation( int totalFrames, double timeToNextFrame, List<Image> images ) {
+    public Animation( int totalFrames, double timeToNextFrame, List<Sprite> sprites ) {
         this.totalFrames = totalFrames;
         this.timeToNextFrame = timeToNextFrame;
-        this.images = images;
+        this.framesPerSecond = 1 / timeToNextFrame;
+        this.sprites = sprites;
     }
     
     public void reset() {
@@ -27,12 +28,29 @@ public class Animation {
         timeCounter = 0;
     }
     
-    public Image getFrameImage() {
-        return images.get( currentFrame );
+    public Sprite getFrameSprite() {
+        return sprites.get( currentFrame );
     }
     
-    public Image getIdleFrameImage() {
-        return images.get( 0 );
+    public Sprite getFrameSprite( int frame ) {
+        return sprites.get( frame );
+    }
+    
+    public Sprite getIdleFrameSprite() {
+        return sprites.get( 0 );
+    }
+    
+    /**
+     * Quadro correspondente ao instante time de um relógio compartilhado.
+     * Não depende do estado da animação, então uma única instância pode
+     * servir a todas as entidades, cada uma com seu deslocamento no tempo.
+     */
+    public int getFrame( double time ) {
+        return Math.floorMod( (int) Math.floor( time * framesPerSecond ), totalFrames );
+    }
+    
+    public Sprite getFrameSpriteAt( double time ) {
+        return sprites.get( getFrame( time ) );
     }
     
     public void update( double delta ) {
@@ -43,8 +61,16 @@ public class Animation {
         }
     }
     
+    public int getTotalFrames() {
+        return totalFrames;
+    }
+    
+    public double getTimeToNextFrame() {
+        return timeToNextFrame;
+    }
+    
     public Animation copy() {
-        return new Animation( totalFrames, timeToNextFrame, images );
+        return new Animation( totalFrames, timeToNextFrame, sprites );
     }
     
 }
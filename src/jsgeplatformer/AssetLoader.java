@@ -0,0 +1,168 @@
+package jsgeplatformer;
+
+import br.com.davidbuzatto.jsge.image.Image;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.imageio.ImageIO;
+
+/**
+ * Carrega recursos em paralelo, em um grupo limitado de threads.
+ *
+ * Cada carga retorna um Future imediatamente. As cargas marcadas como
+ * necessárias são as que o jogo precisa para começar; as demais continuam
+ * em segundo plano depois que ele começa. O progresso pode ser consultado
+ * a qualquer momento, por exemplo para desenhar uma tela de carregamento.
+ *
+ * @author Prof. Dr. David Buzatto
+ */
+public class AssetLoader {
+
+    private ExecutorService executor;
+
+    private AtomicInteger submitted = new AtomicInteger();
+    private AtomicInteger completed = new AtomicInteger();
+    private AtomicInteger requiredSubmitted = new AtomicInteger();
+    private AtomicInteger requiredCompleted = new AtomicInteger();
+
+    public AssetLoader( int threads ) {
+
+        AtomicInteger count = new AtomicInteger();
+
+        executor = Executors.newFixedThreadPool( threads, r -> {
+            Thread t = new Thread( r, "asset-loader-" + count.incrementAndGet() );
+            t.setDaemon( true );
+            return t;
+        });
+
+    }
+
+    /**
+     * Usa uma thread por processador, até quatro.
+     */
+    public AssetLoader() {
+        this( Math.max( 1, Math.min( 4, Runtime.getRuntime().availableProcessors() ) ) );
+    }
+
+    public <T> Future<T> submit( Callable<T> task, boolean required ) {
+
+        submitted.incrementAndGet();
+        if ( required ) {
+            requiredSubmitted.incrementAndGet();
+        }
+
+        FutureTask<T> future = new FutureTask<>( task ) {
+            @Override
+            protected void done() {
+                completed.incrementAndGet();
+                if ( required ) {
+                    requiredCompleted.incrementAndGet();
+                }
+            }
+        };
+
+        executor.execute( future );
+        return future;
+
+    }
+
+    public Future<Image> loadImage( String filePath, boolean required ) {
+        return submit( () -> {
+            BufferedImage bi = ImageIO.read( new File( filePath ) );
+            if ( bi == null ) {
+                throw new IOException( "not an image: " + filePath );
+            }
+            return new Image( bi );
+        }, required );
+    }
+
+    public Future<SpriteAtlas> loadAtlas( String imageDir, String cacheDir, boolean required ) {
+        return submit( () -> SpriteAtlas.load( imageDir, cacheDir ), required );
+    }
+
+    public Future<Level> loadLevel( String filePath, boolean required ) {
+        return submit( () -> LevelIO.read( Paths.get( filePath ) ), required );
+    }
+
+    /**
+     * Decodifica um efeito sonoro para o mixer, na thread de carga.
+     */
+    public Future<SoundEffect> loadSoundEffect( SoundEffects engine, String filePath, int maxVoices, boolean required ) {
+        return submit( () -> engine.load( filePath, maxVoices ), required );
+    }
+
+    /**
+     * Fração das cargas já concluídas, entre 0 e 1.
+     */
+    public double getProgress() {
+        int total = submitted.get();
+        return total == 0 ? 1 : (double) completed.get() / total;
+    }
+
+    public double getRequiredProgress() {
+        int total = requiredSubmitted.get();
+        return total == 0 ? 1 : (double) requiredCompleted.get() / total;
+    }
+
+    public boolean isRequiredDone() {
+        return requiredCompleted.get() == requiredSubmitted.get();
+    }
+
+    public boolean isDone() {
+        return completed.get() == submitted.get();
+    }
+
+    /**
+     * Termina as threads depois das cargas pendentes.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Resultado de uma carga opcional já concluída (ou espera por ela), ou
+     * null se ela falhou; a falha é informada na saída de erro.
+     */
+    public static <T> T getOptional( Future<T> future ) {
+        try {
+            return get( future );
+        } catch ( RuntimeException exc ) {
+            Throwable cause = exc.getCause() != null ? exc.getCause() : exc;
+            System.err.println( "optional asset not loaded: " + cause.getMessage() );
+            return null;
+        }
+    }
+
+    /**
+     * Resultado de uma carga já concluída (ou espera por ela). Falhas de
+     * entrada e saída são relançadas como UncheckedIOException.
+     */
+    public static <T> T get( Future<T> future ) {
+
+        try {
+            return future.get();
+        } catch ( InterruptedException exc ) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException( exc );
+        } catch ( ExecutionException exc ) {
+            Throwable cause = exc.getCause();
+            if ( cause instanceof IOException ) {
+                throw new UncheckedIOException( (IOException) cause );
+            } else if ( cause instanceof RuntimeException ) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException( cause );
+        }
+
+    }
+
+}
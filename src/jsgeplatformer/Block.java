@@ -1,9 +1,7 @@
 package jsgeplatformer;
 
-import br.com.davidbuzatto.jsge.core.engine.EngineFrame;
 import br.com.davidbuzatto.jsge.core.utils.ColorUtils;
 import br.com.davidbuzatto.jsge.geom.Rectangle;
-import br.com.davidbuzatto.jsge.image.Image;
 import java.awt.Color;
 
 /**
@@ -15,16 +13,16 @@ public class Block {
     
     public Rectangle rect;
     public Color color;
-    public Image image;
+    public Sprite sprite;
 
-    public Block( Rectangle rect, Color color, Image image ) {
+    public Block( Rectangle rect, Color color, Sprite sprite ) {
         this.rect = rect;
         this.color = color;
-        this.image = image;
+        this.sprite = sprite;
     }
     
-    public void draw( EngineFrame e ) {
-        e.drawImage( image, rect.x, rect.y );
+    public void draw( DrawTarget e ) {
+        sprite.draw( e, rect.x, rect.y );
         if ( color != null ) {
             e.fillRectangle( rect, ColorUtils.fade( color, 0.5 ) );
         }
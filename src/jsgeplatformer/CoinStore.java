@@ -0,0 +1,155 @@
+package jsgeplatformer;
+
+import java.util.Arrays;
+
+/**
+ * Armazena as moedas em arrays de tipos primitivos (estrutura de arrays).
+ * 
+ * Todas as moedas compartilham tamanho, animação e som. A posição (x, y) é
+ * o canto superior esquerdo da moeda.
+ * 
+ * A animação é derivada do relógio do mundo mais a fase de cada moeda, sem
+ * nenhum trabalho de atualização por moeda.
+ * 
+ * Moedas coletadas são enfileiradas e removidas por compact, trocando de
+ * lugar com a última moeda.
+ * 
+ * @author Prof. Dr. David Buzatto
+ */
+public class CoinStore {
+    
+    public int size;
+    
+    public double[] x;
+    public double[] y;
+    public boolean[] collected;
+    public double[] phase;
+    
+    // índice da moeda na tabela de entidades da fase, ou -1
+    public int[] id;
+    
+    public int[] removed = new int[16];
+    public int removedCount;
+    
+    public double width;
+    public double height;
+    
+    private double time;
+    private Animation animation;
+    private SoundEffect sound;
+
+    public CoinStore( double width, double height, Animation animation, SoundEffect sound ) {
+        this.width = width;
+        this.height = height;
+        this.animation = animation;
+        this.sound = sound;
+        allocate( 64 );
+    }
+    
+    public void setSound( SoundEffect sound ) {
+        this.sound = sound;
+    }
+    
+    public int add( double px, double py ) {
+        return add( px, py, 0 );
+    }
+    
+    /**
+     * Adiciona uma moeda cuja animação está adiantada em phase segundos.
+     */
+    public int add( double px, double py, double phase ) {
+        
+        if ( size == x.length ) {
+            allocate( size * 2 );
+        }
+        
+        int i = size++;
+        x[i] = px;
+        y[i] = py;
+        collected[i] = false;
+        this.phase[i] = phase;
+        id[i] = -1;
+        
+        return i;
+        
+    }
+    
+    public void clear() {
+        size = 0;
+        removedCount = 0;
+    }
+    
+    /**
+     * Remove a moeda em O(1), movendo a última para o seu lugar.
+     */
+    public void remove( int i ) {
+        int last = --size;
+        if ( i != last ) {
+            x[i] = x[last];
+            y[i] = y[last];
+            collected[i] = collected[last];
+            phase[i] = phase[last];
+            id[i] = id[last];
+        }
+    }
+    
+    /**
+     * Remove as moedas coletadas desde a última compactação. Os índices são
+     * removidos do maior para o menor, assim a moeda movida para o lugar de
+     * outra nunca é uma das pendentes.
+     */
+    public void compact() {
+        Arrays.sort( removed, 0, removedCount );
+        for ( int k = removedCount - 1; k >= 0; k-- ) {
+            remove( removed[k] );
+        }
+        removedCount = 0;
+    }
+    
+    /**
+     * Atualiza o relógio usado pelas animações das moedas.
+     */
+    public void setTime( double time ) {
+        this.time = time;
+    }
+    
+    public void collect( int i ) {
+        
+        if ( collected[i] ) {
+            return;
+        }
+        
+        if ( sound != null ) {
+            sound.play();
+        }
+        
+        collected[i] = true;
+        
+        if ( removedCount == removed.length ) {
+            removed = Arrays.copyOf( removed, removedCount * 2 );
+        }
+        removed[removedCount++] = i;
+        
+    }
+    
+    public void draw( DrawTarget e, int i ) {
+        animation.getFrameSpriteAt( time + phase[i] ).draw( e, x[i], y[i] );
+    }
+    
+    private void allocate( int capacity ) {
+        if ( x == null ) {
+            x = new double[capacity];
+            y = new double[capacity];
+            collected = new boolean[capacity];
+            phase = new double[capacity];
+            id = new int[capacity];
+        } else {
+            x = Arrays.copyOf( x, capacity );
+            y = Arrays.copyOf( y, capacity );
+            collected = Arrays.copyOf( collected, capacity );
+            phase = Arrays.copyOf( phase, capacity );
+            id = Arrays.copyOf( id, capacity );
+        }
+    }
+    
+}
@@ -0,0 +1,226 @@
+package jsgeplatformer;
+
+import br.com.davidbuzatto.jsge.core.Camera2D;
+import br.com.davidbuzatto.jsge.core.engine.EngineFrame;
+import br.com.davidbuzatto.jsge.geom.Rectangle;
+import br.com.davidbuzatto.jsge.image.Image;
+import java.awt.Paint;
+import java.util.Arrays;
+
+/**
+ * Lista de comandos de desenho de um frame, gravada por uma thread e
+ * desenhada depois por outra (veja DrawPipeline).
+ *
+ * Os comandos guardam apenas valores e referências a imagens que não mudam
+ * enquanto a lista está em uso, então o desenho não lê o estado do mundo.
+ * Os comandos ficam em arrays paralelos que crescem quando preciso e são
+ * reaproveitados a cada frame: depois dos primeiros frames, gravar uma
+ * lista não aloca.
+ *
+ * @author Prof. Dr. David Buzatto
+ */
+public class DrawList implements DrawTarget {
+
+    private static final byte IMAGE = 0;
+    private static final byte IMAGE_REGION = 1;
+    private static final byte TEXT = 2;
+    private static final byte FPS = 3;
+    private static final byte BEGIN_MODE_2D = 4;
+    private static final byte END_MODE_2D = 5;
+    private static final byte FILL_RECTANGLE = 6;
+
+    // frame em que a lista foi gravada, definido pelo DrawPipeline
+    long frame = Long.MAX_VALUE;
+
+    private int size;
+    private byte[] kinds;
+    private Image[] images;
+    private String[] texts;
+    private Paint[] paints;
+    private int[] fontSizes;
+    private double[] x;
+    private double[] y;
+
+    /*
+     * Recorte da imagem nos comandos IMAGE_REGION e tamanho do retângulo
+     * (em sourceWidth e sourceHeight) nos FILL_RECTANGLE; nos comandos
+     * BEGIN_MODE_2D, guardam o deslocamento, a rotação e o zoom da câmera,
+     * cujo alvo fica em x e y.
+     */
+    private double[] sourceX;
+    private double[] sourceY;
+    private double[] sourceWidth;
+    private double[] sourceHeight;
+
+    // usados apenas no desenho
+    private Rectangle source = new Rectangle();
+    private Camera2D camera = new Camera2D();
+
+    public DrawList() {
+        allocate( 256 );
+    }
+
+    @Override
+    public void drawImage( Image image, double x, double y ) {
+        int i = add( IMAGE, x, y );
+        images[i] = image;
+    }
+
+    @Override
+    public void drawImage( Image image, Rectangle source, double x, double y ) {
+        int i = add( IMAGE_REGION, x, y );
+        images[i] = image;
+        sourceX[i] = source.x;
+        sourceY[i] = source.y;
+        sourceWidth[i] = source.width;
+        sourceHeight[i] = source.height;
+    }
+
+    @Override
+    public void fillRectangle( Rectangle rectangle, Paint paint ) {
+        int i = add( FILL_RECTANGLE, rectangle.x, rectangle.y );
+        sourceWidth[i] = rectangle.width;
+        sourceHeight[i] = rectangle.height;
+        paints[i] = paint;
+    }
+
+    /**
+     * O texto é guardado por referência; para não alocar a cada frame,
+     * use textos que não são montados a cada frame.
+     */
+    @Override
+    public void drawText( String text, double x, double y, int fontSize, Paint paint ) {
+        int i = add( TEXT, x, y );
+        texts[i] = text;
+        fontSizes[i] = fontSize;
+        paints[i] = paint;
+    }
+
+    /**
+     * O valor do FPS é lido da engine na hora do desenho.
+     */
+    @Override
+    public void drawFPS( double x, double y ) {
+        add( FPS, x, y );
+    }
+
+    @Override
+    public void beginMode2D( Camera2D camera ) {
+        int i = add( BEGIN_MODE_2D, camera.target.x, camera.target.y );
+        sourceX[i] = camera.offset.x;
+        sourceY[i] = camera.offset.y;
+        sourceWidth[i] = camera.rotation;
+        sourceHeight[i] = camera.zoom;
+    }
+
+    @Override
+    public void endMode2D() {
+        add( END_MODE_2D, 0, 0 );
+    }
+
+    /**
+     * Executa os comandos na janela da engine, na ordem em que foram
+     * gravados.
+     */
+    public void draw( EngineFrame e ) {
+
+        for ( int i = 0; i < size; i++ ) {
+            switch ( kinds[i] ) {
+                case IMAGE:
+                    e.drawImage( images[i], x[i], y[i] );
+                    break;
+                case IMAGE_REGION:
+                    source.x = sourceX[i];
+                    source.y = sourceY[i];
+                    source.width = sourceWidth[i];
+                    source.height = sourceHeight[i];
+                    e.drawImage( images[i], source, x[i], y[i] );
+                    break;
+                case FILL_RECTANGLE:
+                    e.fillRectangle( x[i], y[i], sourceWidth[i], sourceHeight[i], paints[i] );
+                    break;
+                case TEXT:
+                    e.drawText( texts[i], x[i], y[i], fontSizes[i], paints[i] );
+                    break;
+                case FPS:
+                    e.drawFPS( x[i], y[i] );
+                    break;
+                case BEGIN_MODE_2D:
+                    camera.target.x = x[i];
+                    camera.target.y = y[i];
+                    camera.offset.x = sourceX[i];
+                    camera.offset.y = sourceY[i];
+                    camera.rotation = sourceWidth[i];
+                    camera.zoom = sourceHeight[i];
+                    e.beginMode2D( camera );
+                    break;
+                case END_MODE_2D:
+                    e.endMode2D();
+                    break;
+            }
+        }
+
+    }
+
+    /**
+     * Esvazia a lista, soltando as referências às imagens e textos.
+     */
+    public void clear() {
+        Arrays.fill( images, 0, size, null );
+        Arrays.fill( texts, 0, size, null );
+        Arrays.fill( paints, 0, size, null );
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getFrame() {
+        return frame;
+    }
+
+    private int add( byte kind, double x, double y ) {
+
+        if ( size == kinds.length ) {
+            allocate( size * 2 );
+        }
+
+        int i = size++;
+        kinds[i] = kind;
+        this.x[i] = x;
+        this.y[i] = y;
+
+        return i;
+
+    }
+
+    private void allocate( int capacity ) {
+        if ( kinds == null ) {
+            kinds = new byte[capacity];
+            images = new Image[capacity];
+            texts = new String[capacity];
+            paints = new Paint[capacity];
+            fontSizes = new int[capacity];
+            x = new double[capacity];
+            y = new double[capacity];
+            sourceX = new double[capacity];
+            sourceY = new double[capacity];
+            sourceWidth = new double[capacity];
+            sourceHeight = new double[capacity];
+        } else {
+            kinds = Arrays.copyOf( kinds, capacity );
+            images = Arrays.copyOf( images, capacity );
+            texts = Arrays.copyOf( texts, capacity );
+            paints = Arrays.copyOf( paints, capacity );
+            fontSizes = Arrays.copyOf( fontSizes, capacity );
+            x = Arrays.copyOf( x, capacity );
+            y = Arrays.copyOf( y, capacity );
+            sourceX = Arrays.copyOf( sourceX, capacity );
+            sourceY = Arrays.copyOf( sourceY, capacity );
+            sourceWidth = Arrays.copyOf( sourceWidth, capacity );
+            sourceHeight = Arrays.copyOf( sourceHeight, capacity );
+        }
+    }
+
+}
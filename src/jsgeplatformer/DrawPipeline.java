@@ -0,0 +1,103 @@
+package jsgeplatformer;
+
+/**
+ * Três DrawLists compartilhadas entre a thread que simula e grava os
+ * frames e a que os desenha, para que uma trabalhe enquanto a outra
+ * desenha o frame anterior.
+ *
+ * Uma lista está sendo gravada, outra guarda o último frame completo e a
+ * terceira está sendo desenhada. Publicar troca a gravada pela completa e
+ * pegar para desenhar troca a completa pela desenhada, então nenhuma das
+ * threads espera pela outra; se a gravação for mais rápida, os frames que
+ * não chegaram a ser desenhados são pulados. As listas são reaproveitadas
+ * e as trocas não alocam.
+ *
+ * @author Prof. Dr. David Buzatto
+ */
+public class DrawPipeline {
+
+    private DrawList[] lists = { new DrawList(), new DrawList(), new DrawList() };
+    private int writing = 0;
+    private int ready = 1;
+    private int drawing = 2;
+    private boolean fresh;
+
+    private long frame;
+    private long publishedCount;
+    private long skippedCount;
+
+    /**
+     * Esvazia e retorna a lista em que o próximo frame será gravado.
+     */
+    public synchronized DrawList beginFrame() {
+        DrawList list = lists[writing];
+        list.clear();
+        list.frame = frame;
+        return list;
+    }
+
+    /**
+     * Torna a lista gravada o último frame completo.
+     */
+    public synchronized void publish() {
+
+        int t = ready;
+        ready = writing;
+        writing = t;
+
+        if ( fresh ) {
+            skippedCount++;
+        }
+        fresh = true;
+        publishedCount++;
+        frame++;
+
+    }
+
+    /**
+     * Pega o último frame completo para desenhar, ou repete o que já
+     * estava sendo desenhado se nenhum novo foi publicado.
+     *
+     * @return null se nenhum frame foi publicado ainda.
+     */
+    public synchronized DrawList acquire() {
+
+        if ( fresh ) {
+            int t = drawing;
+            drawing = ready;
+            ready = t;
+            fresh = false;
+        }
+
+        DrawList list = lists[drawing];
+        return list.frame == Long.MAX_VALUE ? null : list;
+
+    }
+
+    /**
+     * O frame mais antigo que ainda pode ser desenhado. Imagens que
+     * deixaram de ser usadas depois dele ainda não podem ser alteradas.
+     */
+    public synchronized long getOldestFrameInUse() {
+        return Math.min( lists[0].frame, Math.min( lists[1].frame, lists[2].frame ) );
+    }
+
+    /**
+     * O número do próximo frame a ser gravado.
+     */
+    public synchronized long getFrame() {
+        return frame;
+    }
+
+    public synchronized long getPublishedCount() {
+        return publishedCount;
+    }
+
+    /**
+     * Frames publicados que foram substituídos antes de serem desenhados.
+     */
+    public synchronized long getSkippedCount() {
+        return skippedCount;
+    }
+
+}
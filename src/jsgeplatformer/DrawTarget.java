@@ -0,0 +1,33 @@
+package jsgeplatformer;
+
+import br.com.davidbuzatto.jsge.core.Camera2D;
+import br.com.davidbuzatto.jsge.geom.Rectangle;
+import br.com.davidbuzatto.jsge.image.Image;
+import java.awt.Paint;
+
+/**
+ * Destino das operações de desenho do jogo.
+ * 
+ * A própria janela da engine é um destino, que desenha na hora, mas o
+ * frame também pode ser gravado em uma DrawList e desenhado depois, em
+ * outra thread.
+ * 
+ * @author Prof. Dr. David Buzatto
+ */
+public interface DrawTarget {
+    
+    void drawImage( Image image, double x, double y );
+    
+    void drawImage( Image image, Rectangle source, double x, double y );
+    
+    void fillRectangle( Rectangle rectangle, Paint paint );
+    
+    void drawText( String text, double x, double y, int fontSize, Paint paint );
+    
+    void drawFPS( double x, double y );
+    
+    void beginMode2D( Camera2D camera );
+    
+    void endMode2D();
+    
+}
@@ -0,0 +1,327 @@
+package jsgeplatformer;
+
+import br.com.davidbuzatto.jsge.geom.Rectangle;
+import java.util.Arrays;
+
+/**
+ * Armazena os inimigos em arrays de tipos primitivos (estrutura de arrays).
+ * 
+ * Todos os inimigos do armazém compartilham tamanho, velocidade, animações
+ * e som. A posição (x, y) é o centro do inimigo. O quadro da animação é
+ * derivado do relógio do mundo e do instante em que o inimigo começou a
+ * andar na direção atual.
+ * 
+ * Inimigos mortos são removidos trocando de lugar com o último, então os
+ * índices não são estáveis entre frames. Como a remoção durante um laço
+ * invalidaria os índices, kill apenas marca o inimigo e o enfileira em
+ * removed; a remoção de fato é feita depois, com remove.
+ * 
+ * @author Prof. Dr. David Buzatto
+ */
+public class EnemyStore {
+    
+    public static final byte ON_GROUND = 0;
+    public static final byte FALLING = 1;
+    public static final byte JUMPING = 2;
+    
+    public static final byte LEFT = 0;
+    public static final byte RIGHT = 1;
+    
+    public static enum CollisionType {
+        NONE,
+        LEFT,
+        RIGHT,
+        UP,
+        DOWN,
+        ALL
+    }
+    
+    // sondas de colisão (mesmas dimensões de Player)
+    private static final double CP_SIDE_WIDTH = 6;
+    private static final double CP_SIDE_HEIGHT = 20;
+    private static final double CP_VERTICAL_WIDTH = 12;
+    private static final double CP_VERTICAL_HEIGHT = 6;
+    
+    public int size;
+    
+    public double[] x;
+    public double[] y;
+    public double[] velX;
+    public double[] velY;
+    public double[] lastX;
+    public double[] lastY;
+    public double[] prevY;
+    public byte[] state;
+    public byte[] direction;
+    public boolean[] dead;
+    public double[] animationStart;
+    
+    // índice do inimigo na tabela de entidades da fase, ou -1
+    public int[] id;
+    
+    public int[] removed = new int[16];
+    public int removedCount;
+    
+    public double width;
+    public double height;
+    public double walkSpeed;
+    
+    private double time;
+    private Animation walkRightAnimation;
+    private Animation walkLeftAnimation;
+    private SoundEffect sound;
+
+    public EnemyStore( double width, double height, double walkSpeed, 
+                       Animation walkRightAnimation, Animation walkLeftAnimation, SoundEffect sound ) {
+        
+        this.width = width;
+        this.height = height;
+        this.walkSpeed = walkSpeed;
+        this.walkRightAnimation = walkRightAnimation;
+        this.walkLeftAnimation = walkLeftAnimation;
+        this.sound = sound;
+        
+        allocate( 64 );
+        
+    }
+    
+    public void setSound( SoundEffect sound ) {
+        this.sound = sound;
+    }
+    
+    public int add( double px, double py ) {
+        
+        if ( size == x.length ) {
+            allocate( size * 2 );
+        }
+        
+        int i = size++;
+        x[i] = px;
+        y[i] = py;
+        velX[i] = 0;
+        velY[i] = 0;
+        lastX[i] = px;
+        lastY[i] = py;
+        prevY[i] = 0;
+        state[i] = ON_GROUND;
+        direction[i] = LEFT;
+        dead[i] = false;
+        animationStart[i] = time;
+        id[i] = -1;
+        
+        return i;
+        
+    }
+    
+    /**
+     * Garante espaço para capacity inimigos sem realocar os arrays.
+     */
+    public void reserve( int capacity ) {
+        if ( capacity > x.length ) {
+            allocate( capacity );
+        }
+    }
+    
+    public void clear() {
+        size = 0;
+        removedCount = 0;
+    }
+    
+    /**
+     * Remove o inimigo em O(1), movendo o último para o seu lugar. Pode ser
+     * usado ao percorrer os índices do último para o primeiro.
+     */
+    public void remove( int i ) {
+        
+        int last = --size;
+        
+        if ( i != last ) {
+            x[i] = x[last];
+            y[i] = y[last];
+            velX[i] = velX[last];
+            velY[i] = velY[last];
+            lastX[i] = lastX[last];
+            lastY[i] = lastY[last];
+            prevY[i] = prevY[last];
+            state[i] = state[last];
+            direction[i] = direction[last];
+            dead[i] = dead[last];
+            animationStart[i] = animationStart[last];
+            id[i] = id[last];
+        }
+        
+    }
+    
+    /**
+     * Copia o inimigo i para outro armazém, sem removê-lo deste.
+     * 
+     * @return O índice do inimigo no outro armazém.
+     */
+    public int copyTo( int i, EnemyStore other ) {
+        
+        int j = other.add( x[i], y[i] );
+        other.velX[j] = velX[i];
+        other.velY[j] = velY[i];
+        other.lastX[j] = lastX[i];
+        other.lastY[j] = lastY[i];
+        other.prevY[j] = prevY[i];
+        other.state[j] = state[i];
+        other.direction[j] = direction[i];
+        other.dead[j] = dead[i];
+        other.animationStart[j] = animationStart[i];
+        other.id[j] = id[i];
+        
+        return j;
+        
+    }
+    
+    public void saveState( int i ) {
+        lastX[i] = x[i];
+        lastY[i] = y[i];
+    }
+    
+    public void update( int i, double delta ) {
+        
+        if ( direction[i] == LEFT ) {
+            velX[i] = -walkSpeed;
+        } else {
+            velX[i] = walkSpeed;
+        }
+        
+        x[i] += velX[i] * delta;
+        y[i] += velY[i] * delta;
+        
+        velY[i] += World.GRAVITY * delta;
+        
+        if ( velY[i] >= World.MAX_FALL_SPEED ) {
+            velY[i] = World.MAX_FALL_SPEED;
+        }
+        
+        if ( state[i] != ON_GROUND ) {
+            if ( prevY[i] < y[i] ) {
+                state[i] = FALLING;
+            }
+        }
+        
+        prevY[i] = y[i];
+        
+    }
+    
+    /**
+     * Testa as sondas de colisão do inimigo, na ordem cima, baixo, esquerda
+     * e direita, contra um retângulo.
+     */
+    public CollisionType checkCollision( int i, Rectangle r ) {
+        
+        double cx = x[i];
+        double cy = y[i];
+        
+        if ( overlaps( cx - CP_VERTICAL_WIDTH / 2, cy - height / 2, CP_VERTICAL_WIDTH, CP_VERTICAL_HEIGHT, r ) ) {
+            return CollisionType.UP;
+        } else if ( overlaps( cx - CP_VERTICAL_WIDTH / 2, cy + height / 2 - CP_VERTICAL_HEIGHT, CP_VERTICAL_WIDTH, CP_VERTICAL_HEIGHT, r ) ) {
+            return CollisionType.DOWN;
+        } else if ( overlaps( cx - width / 2, cy - CP_SIDE_HEIGHT / 2, CP_SIDE_WIDTH, CP_SIDE_HEIGHT, r ) ) {
+            return CollisionType.LEFT;
+        } else if ( overlaps( cx + width / 2 - CP_SIDE_WIDTH, cy - CP_SIDE_HEIGHT / 2, CP_SIDE_WIDTH, CP_SIDE_HEIGHT, r ) ) {
+            return CollisionType.RIGHT;
+        }
+        
+        return CollisionType.NONE;
+        
+    }
+    
+    public void setOnGround( int i ) {
+        velY[i] = 0.0;
+        state[i] = ON_GROUND;
+    }
+    
+    /**
+     * Inverte a direção. A animação da nova direção começa do primeiro quadro.
+     */
+    public void turn( int i ) {
+        if ( direction[i] == LEFT ) {
+            direction[i] = RIGHT;
+        } else {
+            direction[i] = LEFT;
+        }
+        animationStart[i] = time;
+    }
+    
+    /**
+     * Atualiza o relógio usado pelas animações dos inimigos.
+     */
+    public void setTime( double time ) {
+        this.time = time;
+    }
+    
+    public void kill( int i ) {
+        
+        if ( dead[i] ) {
+            return;
+        }
+        
+        if ( sound != null ) {
+            sound.play();
+        }
+        
+        dead[i] = true;
+        
+        if ( removedCount == removed.length ) {
+            removed = Arrays.copyOf( removed, removedCount * 2 );
+        }
+        removed[removedCount++] = i;
+        
+    }
+    
+    public void draw( DrawTarget e, int i, double alpha ) {
+        
+        Sprite currentSprite;
+        
+        if ( direction[i] == LEFT ) {
+            currentSprite = walkLeftAnimation.getFrameSpriteAt( time - animationStart[i] );
+        } else {
+            currentSprite = walkRightAnimation.getFrameSpriteAt( time - animationStart[i] );
+        }
+        
+        double dx = lastX[i] + ( x[i] - lastX[i] ) * alpha;
+        double dy = lastY[i] + ( y[i] - lastY[i] ) * alpha;
+        currentSprite.draw( e, dx - width / 2, dy - height / 2 );
+        
+    }
+    
+    private static boolean overlaps( double px, double py, double pw, double ph, Rectangle r ) {
+        return px < r.x + r.width && px + pw > r.x &&
+               py < r.y + r.height && py + ph > r.y;
+    }
+    
+    private void allocate( int capacity ) {
+        if ( x == null ) {
+            x = new double[capacity];
+            y = new double[capacity];
+            velX = new double[capacity];
+            velY = new double[capacity];
+            lastX = new double[capacity];
+            lastY = new double[capacity];
+            prevY = new double[capacity];
+            state = new byte[capacity];
+            direction = new byte[capacity];
+            dead = new boolean[capacity];
+            animationStart = new double[capacity];
+            id = new int[capacity];
+        } else {
+            x = Arrays.copyOf( x, capacity );
+            y = Arrays.copyOf( y, capacity );
+            velX = Arrays.copyOf( velX, capacity );
+            velY = Arrays.copyOf( velY, capacity );
+            lastX = Arrays.copyOf( lastX, capacity );
+            lastY = Arrays.copyOf( lastY, capacity );
+            prevY = Arrays.copyOf( prevY, capacity );
+            state = Arrays.copyOf( state, capacity );
+            direction = Arrays.copyOf( direction, capacity );
+            dead = Arrays.copyOf( dead, capacity );
+            animationStart = Arrays.copyOf( animationStart, capacity );
+            id = Arrays.copyOf( id, capacity );
+        }
+    }
+    
+}
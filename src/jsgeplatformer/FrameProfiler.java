@@ -0,0 +1,336 @@
+package jsgeplatformer;
+
+import br.com.davidbuzatto.jsge.core.engine.EngineFrame;
+import br.com.davidbuzatto.jsge.core.utils.ColorUtils;
+import java.awt.Color;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Medidor do tempo de cada fase do frame.
+ *
+ * Cada fase acumula, em nanossegundos, o tempo entre begin e end (uma
+ * fase pode ocorrer várias vezes no mesmo frame, como os passos da
+ * simulação com passo fixo). Em endFrame os acumulados vão para um buffer
+ * circular pré-alocado com os últimos frames, que pode ser mostrado na
+ * tela (gráfico e percentis) ou gravado em CSV. Desligado, begin e end
+ * retornam sem medir nada.
+ *
+ * BACKGROUND, TILES e ENTITIES medem a gravação do desenho do frame, na
+ * thread da simulação. DRAW mede o desenho da lista gravada, na thread da
+ * janela, que nem sempre desenha uma vez por frame: ela tem acumuladores
+ * próprios, fechados a cada desenho por endDraw, e cada frame guarda o
+ * último desenho concluído antes de endFrame. As demais fases e endFrame
+ * ficam na thread da simulação.
+ *
+ * @author Prof. Dr. David Buzatto
+ */
+public class FrameProfiler {
+
+    public static final int INPUT = 0;
+    public static final int PLAYER = 1;
+    public static final int STREAMING = 2;
+    public static final int ENEMIES = 3;
+    public static final int PLAYER_BLOCKS = 4;
+    public static final int PLAYER_COINS = 5;
+    public static final int ENEMIES_BLOCKS = 6;
+    public static final int PLAYER_ENEMIES = 7;
+    public static final int ENEMIES_ENEMIES = 8;
+    public static final int REMOVAL = 9;
+    public static final int BACKGROUND = 10;
+    public static final int TILES = 11;
+    public static final int ENTITIES = 12;
+    public static final int DRAW = 13;
+
+    public static final String[] PHASE_NAMES = {
+        "input", "player", "streaming", "enemies",
+        "player_blocks", "player_coins", "enemies_blocks",
+        "player_enemies", "enemies_enemies", "removal",
+        "background", "tiles", "entities", "draw"
+    };
+
+    public static final int PHASE_COUNT = PHASE_NAMES.length;
+
+    // primeira das fases medidas na thread da janela, que vão até o fim da lista
+    public static final int FIRST_DRAW_PHASE = DRAW;
+
+    // a última coluna de cada frame guarda o tempo total, de um endFrame ao outro
+    private static final int FRAME = PHASE_COUNT;
+    private static final int COLUMNS = PHASE_COUNT + 1;
+
+    private static final int STATS_INTERVAL = 30;
+    private static final long TARGET_FRAME_NANOS = 1_000_000_000L / 60;
+
+    private volatile boolean enabled;
+
+    private int capacity;
+    private long[] samples;
+    private int frames;
+    private int next;
+
+    private long[] started = new long[PHASE_COUNT];
+    private long[] current = new long[PHASE_COUNT];
+    private long lastFrameEnd;
+
+    // usados apenas pela thread que desenha, até endDraw; início 0 é fase não iniciada
+    private long[] drawStarted = new long[PHASE_COUNT];
+    private long[] drawCurrent = new long[PHASE_COUNT];
+
+    // tempos do último desenho concluído
+    private long[] lastDraw = new long[PHASE_COUNT];
+
+    // percentis (p50, p95, p99) por coluna, recalculados de tempos em tempos
+    private long[] sorted;
+    private long[] stats = new long[COLUMNS * 3];
+    private int framesSinceStats = STATS_INTERVAL;
+
+    public FrameProfiler( int capacity ) {
+        this.capacity = capacity;
+        this.samples = new long[capacity * COLUMNS];
+        this.sorted = new long[capacity];
+    }
+
+    /**
+     * Guarda os últimos 600 frames, dez segundos a 60 frames por segundo.
+     */
+    public FrameProfiler() {
+        this( 600 );
+    }
+
+    public void begin( int phase ) {
+        if ( enabled ) {
+            if ( phase >= FIRST_DRAW_PHASE ) {
+                drawStarted[phase] = System.nanoTime();
+            } else {
+                started[phase] = System.nanoTime();
+            }
+        }
+    }
+
+    public void end( int phase ) {
+        if ( enabled ) {
+            if ( phase >= FIRST_DRAW_PHASE ) {
+                // a medição pode ter sido ligada depois do begin
+                if ( drawStarted[phase] != 0 ) {
+                    drawCurrent[phase] += System.nanoTime() - drawStarted[phase];
+                    drawStarted[phase] = 0;
+                }
+            } else {
+                current[phase] += System.nanoTime() - started[phase];
+            }
+        }
+    }
+
+    /**
+     * Fecha o desenho atual, na thread que desenha. Os tempos das fases de
+     * desenho passam a ser os usados pelos próximos frames. Chamado também
+     * com a medição desligada, para descartar os desenhos que ela cortou ao
+     * meio.
+     */
+    public void endDraw() {
+
+        if ( enabled ) {
+            synchronized ( this ) {
+                System.arraycopy( drawCurrent, FIRST_DRAW_PHASE, lastDraw, FIRST_DRAW_PHASE, PHASE_COUNT - FIRST_DRAW_PHASE );
+            }
+        }
+        Arrays.fill( drawStarted, 0 );
+        Arrays.fill( drawCurrent, 0 );
+
+    }
+
+    /**
+     * Fecha o frame atual, na thread da simulação, guardando os tempos
+     * acumulados de cada fase e os do último desenho.
+     */
+    public synchronized void endFrame() {
+
+        if ( !enabled ) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        int base = next * COLUMNS;
+
+        System.arraycopy( current, 0, samples, base, FIRST_DRAW_PHASE );
+        System.arraycopy( lastDraw, FIRST_DRAW_PHASE, samples, base + FIRST_DRAW_PHASE, PHASE_COUNT - FIRST_DRAW_PHASE );
+        samples[base + FRAME] = lastFrameEnd == 0 ? 0 : now - lastFrameEnd;
+        Arrays.fill( current, 0 );
+
+        lastFrameEnd = now;
+        next = ( next + 1 ) % capacity;
+        if ( frames < capacity ) {
+            frames++;
+        }
+        framesSinceStats++;
+
+    }
+
+    /**
+     * Descarta os frames guardados.
+     */
+    public synchronized void clear() {
+        frames = 0;
+        next = 0;
+        lastFrameEnd = 0;
+        Arrays.fill( current, 0 );
+        Arrays.fill( lastDraw, 0 );
+        framesSinceStats = STATS_INTERVAL;
+    }
+
+    /**
+     * Tempo de uma fase em um dos frames guardados, em nanossegundos; o
+     * frame 0 é o mais antigo. Use PHASE_COUNT como fase para o tempo total
+     * do frame.
+     */
+    public long getSample( int frame, int phase ) {
+        return samples[( ( next - frames + frame + capacity ) % capacity ) * COLUMNS + phase];
+    }
+
+    /**
+     * Percentil (entre 0 e 100) dos tempos de uma fase nos frames
+     * guardados, em nanossegundos.
+     */
+    public synchronized long getPercentile( int phase, double percentile ) {
+        sortPhase( phase );
+        return sortedPercentile( percentile );
+    }
+
+    private void sortPhase( int phase ) {
+        for ( int f = 0; f < frames; f++ ) {
+            sorted[f] = samples[f * COLUMNS + phase];
+        }
+        Arrays.sort( sorted, 0, frames );
+    }
+
+    private long sortedPercentile( double percentile ) {
+        if ( frames == 0 ) {
+            return 0;
+        }
+        int rank = (int) Math.ceil( percentile / 100 * frames ) - 1;
+        return sorted[Math.max( 0, Math.min( rank, frames - 1 ) )];
+    }
+
+    /**
+     * Grava os frames guardados, do mais antigo para o mais recente, com
+     * uma coluna por fase e o total do frame, em nanossegundos.
+     */
+    public synchronized void writeCsv( Path path ) throws IOException {
+
+        try ( PrintWriter out = new PrintWriter( Files.newBufferedWriter( path, StandardCharsets.UTF_8 ) ) ) {
+
+            out.print( "frame" );
+            for ( String name : PHASE_NAMES ) {
+                out.print( ',' );
+                out.print( name );
+            }
+            out.println( ",frame_total" );
+
+            for ( int f = 0; f < frames; f++ ) {
+                out.print( f );
+                for ( int phase = 0; phase < COLUMNS; phase++ ) {
+                    out.print( ',' );
+                    out.print( getSample( f, phase ) );
+                }
+                out.println();
+            }
+
+        }
+
+    }
+
+    /**
+     * Desenha, em coordenadas de tela, o gráfico do tempo total dos frames
+     * guardados e uma tabela com p50, p95 e p99 de cada fase, em
+     * milissegundos. A linha vermelha do gráfico marca 1/60 s. Ao contrário
+     * da medição, o desenho aloca (os textos da tabela).
+     *
+     * @return A altura do painel desenhado.
+     */
+    public double draw( EngineFrame e, double x, double y ) {
+
+        updateStats();
+
+        double graphWidth = 300;
+        double graphHeight = 60;
+        double lineHeight = 14;
+        double width = graphWidth + 20;
+        double height = graphHeight + ( COLUMNS + 2 ) * lineHeight + 30;
+
+        e.fillRectangle( x, y, width, height, ColorUtils.fade( Color.BLACK, 0.7 ) );
+
+        // o gráfico vai até 2/60 s; frames mais longos ficam cortados no topo
+        double graphX = x + 10;
+        double graphBottom = y + 10 + graphHeight;
+        double scale = graphHeight / ( TARGET_FRAME_NANOS * 2.0 );
+        double step = graphWidth / capacity;
+
+        for ( int f = 0; f < frames; f++ ) {
+            long nanos = getSample( f, FRAME );
+            double h = Math.min( nanos * scale, graphHeight );
+            e.drawLine( graphX + f * step, graphBottom, graphX + f * step, graphBottom - h,
+                nanos > TARGET_FRAME_NANOS ? Color.ORANGE : Color.GREEN );
+        }
+
+        double targetY = graphBottom - TARGET_FRAME_NANOS * scale;
+        e.drawLine( graphX, targetY, graphX + graphWidth, targetY, Color.RED );
+
+        // o texto não é monoespaçado, então cada coluna tem sua posição
+        double textY = graphBottom + 10 + lineHeight;
+        e.drawText( "ms", graphX, textY, 12, Color.WHITE );
+        e.drawText( "p50", graphX + 130, textY, 12, Color.WHITE );
+        e.drawText( "p95", graphX + 190, textY, 12, Color.WHITE );
+        e.drawText( "p99", graphX + 250, textY, 12, Color.WHITE );
+
+        for ( int phase = 0; phase < COLUMNS; phase++ ) {
+            textY += lineHeight;
+            e.drawText( phase == FRAME ? "frame_total" : PHASE_NAMES[phase], graphX, textY, 12, Color.WHITE );
+            for ( int k = 0; k < 3; k++ ) {
+                e.drawText( String.format( "%.3f", stats[phase * 3 + k] / 1e6 ), graphX + 130 + k * 60, textY, 12, Color.WHITE );
+            }
+        }
+
+        return height;
+
+    }
+
+    private synchronized void updateStats() {
+        if ( framesSinceStats >= STATS_INTERVAL ) {
+            for ( int phase = 0; phase < COLUMNS; phase++ ) {
+                sortPhase( phase );
+                stats[phase * 3] = sortedPercentile( 50 );
+                stats[phase * 3 + 1] = sortedPercentile( 95 );
+                stats[phase * 3 + 2] = sortedPercentile( 99 );
+            }
+            framesSinceStats = 0;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Liga ou desliga a medição. Ao religar, o intervalo em que ela ficou
+     * desligada não conta como um frame.
+     */
+    public synchronized void setEnabled( boolean enabled ) {
+        this.enabled = enabled;
+        lastFrameEnd = 0;
+        Arrays.fill( current, 0 );
+        Arrays.fill( lastDraw, 0 );
+    }
+
+    public synchronized int getFrameCount() {
+        return frames;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+}
@@ -0,0 +1,89 @@
+package jsgeplatformer;
+
+/**
+ * Avança o mundo a cada frame, com passo fixo ou com o tempo do frame.
+ *
+ * Com passo fixo, a simulação avança em passos de 1 / tickRate segundos e
+ * o desenho interpola entre os dois últimos estados (alpha). O jogo, a
+ * simulação sem janela e os replays usam a mesma lógica, então a mesma
+ * sequência de entradas e tempos de frame produz o mesmo mundo.
+ *
+ * @author Prof. Dr. David Buzatto
+ */
+public class FrameStepper {
+
+    private boolean fixedTimestep;
+    private double tickRate;
+    private int maxStepsPerFrame;
+
+    private double accumulator;
+    private double alpha = 1;
+
+    public FrameStepper( boolean fixedTimestep, double tickRate, int maxStepsPerFrame ) {
+        this.fixedTimestep = fixedTimestep;
+        this.tickRate = tickRate;
+        this.maxStepsPerFrame = maxStepsPerFrame;
+    }
+
+    /**
+     * Passo fixo de 1/60 s, com até cinco passos por frame.
+     */
+    public FrameStepper() {
+        this( true, 60, 5 );
+    }
+
+    /**
+     * Avança o mundo pelo tempo de um frame e posiciona a câmera.
+     */
+    public void advance( World world, double delta ) {
+
+        if ( fixedTimestep ) {
+
+            double tickTime = 1.0 / tickRate;
+            int steps = 0;
+            accumulator += delta;
+
+            while ( accumulator >= tickTime && steps < maxStepsPerFrame ) {
+                world.step( tickTime );
+                accumulator -= tickTime;
+                steps++;
+            }
+
+            // muito atrasado: descarta o acúmulo em vez de entrar em espiral
+            if ( accumulator >= tickTime ) {
+                accumulator %= tickTime;
+            }
+
+            alpha = accumulator / tickTime;
+
+        } else {
+            world.step( delta );
+            alpha = 1;
+        }
+
+        world.updateCamera( alpha );
+
+    }
+
+    public void reset() {
+        accumulator = 0;
+        alpha = 1;
+    }
+
+    public double getAlpha() {
+        return alpha;
+    }
+
+    public boolean isFixedTimestep() {
+        return fixedTimestep;
+    }
+
+    public double getTickRate() {
+        return tickRate;
+    }
+
+    public int getMaxStepsPerFrame() {
+        return maxStepsPerFrame;
+    }
+
+}
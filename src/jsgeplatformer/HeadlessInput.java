@@ -0,0 +1,42 @@
+package jsgeplatformer;
+
+/**
+ * Fonte de entrada controlada por código, para a simulação sem janela.
+ * 
+ * @author Prof. Dr. David Buzatto
+ */
+public class HeadlessInput implements InputSource {
+    
+    private static final int MAX_KEYS = 1024;
+    
+    private boolean[] down = new boolean[MAX_KEYS];
+    private boolean[] pressed = new boolean[MAX_KEYS];
+
+    @Override
+    public boolean isKeyDown( int keyCode ) {
+        return keyCode >= 0 && keyCode < MAX_KEYS && down[keyCode];
+    }
+
+    @Override
+    public boolean isKeyPressed( int keyCode ) {
+        return keyCode >= 0 && keyCode < MAX_KEYS && pressed[keyCode];
+    }
+    
+    public void setKeyDown( int keyCode, boolean value ) {
+        if ( value && !down[keyCode] ) {
+            pressed[keyCode] = true;
+        }
+        down[keyCode] = value;
+    }
+    
+    /**
+     * Limpa as teclas pressionadas no frame, como a engine faz ao final
+     * de cada frame.
+     */
+    public void endFrame() {
+        for ( int i = 0; i < MAX_KEYS; i++ ) {
+            pressed[i] = false;
+        }
+    }
+    
+}
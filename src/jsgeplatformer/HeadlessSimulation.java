@@ -0,0 +1,415 @@
+package jsgeplatformer;
+
+import br.com.davidbuzatto.jsge.core.Camera2D;
+import br.com.davidbuzatto.jsge.core.engine.EngineFrame;
+import br.com.davidbuzatto.jsge.geom.Rectangle;
+import br.com.davidbuzatto.jsge.image.Image;
+import java.awt.Color;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Executa o mundo do jogo sem janela e sem áudio.
+ * 
+ * Uso: java jsgeplatformer.HeadlessSimulation [frames] [delta] [perfil.csv]
+ *      java jsgeplatformer.HeadlessSimulation replay gravação [perfil.csv]
+ *      java jsgeplatformer.HeadlessSimulation alloc [frames] [bytesPorFrame]
+ * 
+ * Com o perfil, o tempo de cada fase de cada frame é gravado em CSV (veja
+ * FrameProfiler). No modo replay, uma partida gravada com Main --record é
+ * reproduzida o mais rápido possível e cada frame é conferido pelo
+ * checksum do mundo. No modo alloc, a simulação é aquecida e depois mede-se
+ * quantos bytes cada frame aloca, contando a simulação e a gravação do
+ * desenho do frame em uma DrawList; o processo termina com erro se a média
+ * passar do limite, o que serve de teste de regressão. O limite padrão, de
+ * um byte por frame, tolera as poucas alocações da própria JVM enquanto o
+ * JIT ainda troca versões do código, mas não um único objeto por frame.
+ * 
+ * @author Prof. Dr. David Buzatto
+ */
+public class HeadlessSimulation {
+    
+    private static final double VIEW_WIDTH = 800;
+    private static final double VIEW_HEIGHT = 448;
+    
+    private World world;
+    private HeadlessInput input;
+    private FrameStepper stepper;
+    
+    // criado no primeiro draw, para que quem só simula não pague por ele
+    private TileChunkCache chunkCache;
+
+    public HeadlessSimulation( String map ) {
+        this( LevelIO.parseText( map ) );
+    }
+    
+    public HeadlessSimulation( Level level ) {
+        
+        input = new HeadlessInput();
+        
+        Sprite blank = new Sprite( new Image( 32, 32 ) );
+        List<Sprite> sprites = List.of( blank, blank, blank, blank );
+        
+        Player player = new Player(
+            new Rectangle( 0, 0, 32, 40 ),
+            250, 400, 400,
+            null, Color.BLUE,
+            new Animation( 2, 0.15, sprites ),
+            new Animation( 2, 0.15, sprites ),
+            blank, blank, blank, blank, blank, blank
+        );
+        
+        Map<Character, Sprite> tileSprites = new HashMap<>();
+        for ( char c = 'A'; c <= 'I'; c++ ) {
+            tileSprites.put( c, blank );
+        }
+        
+        world = new World(
+            player, tileSprites,
+            new Animation( 4, 0.1, sprites ), null,
+            new Animation( 2, 0.15, sprites ), new Animation( 2, 0.15, sprites ), null,
+            VIEW_WIDTH, VIEW_HEIGHT
+        );
+        world.load( level );
+        
+    }
+    
+    /**
+     * Executa um frame: lê a entrada, avança a simulação e posiciona a câmera.
+     */
+    public void stepFrame( double delta ) {
+        stepFrame( input, delta );
+        input.endFrame();
+    }
+    
+    /**
+     * Executa um frame com outra fonte de entrada. Sem um FrameStepper, o
+     * mundo avança um único passo de delta segundos.
+     */
+    public void stepFrame( InputSource source, double delta ) {
+        
+        FrameProfiler profiler = world.getProfiler();
+        profiler.begin( FrameProfiler.INPUT );
+        world.getPlayer().readInput( source );
+        profiler.end( FrameProfiler.INPUT );
+        
+        if ( stepper != null ) {
+            stepper.advance( world, delta );
+        } else {
+            world.step( delta );
+            world.updateCamera( 1 );
+        }
+        
+        profiler.endFrame();
+        
+    }
+    
+    /**
+     * Desenha o mundo visto pela câmera, como o jogo faz: os tiles a partir
+     * dos chunks pré-desenhados, com o cache configurado como no jogo, as
+     * moedas, os inimigos e o jogador.
+     */
+    public void draw( DrawTarget e ) {
+        
+        TileMap tileMap = world.getTileMap();
+        if ( chunkCache == null ) {
+            chunkCache = new TileChunkCache( tileMap, 16, 1 );
+        }
+        
+        Camera2D camera = world.getCamera();
+        double width = VIEW_WIDTH / camera.zoom;
+        double height = VIEW_HEIGHT / camera.zoom;
+        double x = camera.target.x - camera.offset.x / camera.zoom;
+        double y = camera.target.y - camera.offset.y / camera.zoom;
+        
+        chunkCache.update( x, y, width, height );
+        
+        e.beginMode2D( camera );
+        chunkCache.draw( e, x, y, width, height );
+        
+        CoinStore coins = world.getCoins();
+        for ( int i = 0; i < coins.size; i++ ) {
+            if ( !coins.collected[i] ) {
+                coins.draw( e, i );
+            }
+        }
+        
+        EnemyStore enemies = world.getEnemies();
+        for ( int i = 0; i < enemies.size; i++ ) {
+            if ( !enemies.dead[i] ) {
+                enemies.draw( e, i, 1 );
+            }
+        }
+        
+        world.getPlayer().draw( e, 1 );
+        e.endMode2D();
+        
+    }
+    
+    /**
+     * Reproduz uma gravação inteira e retorna o primeiro frame em que o
+     * mundo divergiu dela, ou -1.
+     */
+    public int replay( InputRecording recording ) {
+        
+        ReplayInput replay = new ReplayInput( recording );
+        stepper = recording.createStepper();
+        
+        while ( replay.hasNext() ) {
+            stepFrame( replay, replay.next() );
+            replay.check( world.checksum() );
+        }
+        
+        return replay.getDivergentFrame();
+        
+    }
+    
+    public FrameStepper getStepper() {
+        return stepper;
+    }
+    
+    public void setStepper( FrameStepper stepper ) {
+        this.stepper = stepper;
+    }
+    
+    public World getWorld() {
+        return world;
+    }
+    
+    public HeadlessInput getInput() {
+        return input;
+    }
+    
+    public static void main( String[] args ) throws IOException {
+        
+        if ( args.length > 1 && args[0].equals( "replay" ) ) {
+            replayMain( Paths.get( args[1] ), args.length > 2 ? Paths.get( args[2] ) : null );
+            return;
+        }
+        
+        if ( args.length > 0 && args[0].equals( "parallel" ) ) {
+            parallelMain( args.length > 1 ? Integer.parseInt( args[1] ) : 2000 );
+            return;
+        }
+        
+        if ( args.length > 0 && args[0].equals( "alloc" ) ) {
+            allocationMain(
+                args.length > 1 ? Integer.parseInt( args[1] ) : 12000,
+                args.length > 2 ? Double.parseDouble( args[2] ) : 1 );
+            return;
+        }
+        
+        int frames = args.length > 0 ? Integer.parseInt( args[0] ) : 100000;
+        double delta = args.length > 1 ? Double.parseDouble( args[1] ) : 1.0 / 60;
+        Path profile = args.length > 2 ? Paths.get( args[2] ) : null;
+        
+        HeadlessSimulation sim = new HeadlessSimulation( LevelIO.read( Paths.get( Levels.LEVEL_1_PATH ) ) );
+        HeadlessInput input = sim.getInput();
+        
+        if ( profile != null ) {
+            FrameProfiler profiler = new FrameProfiler( frames );
+            profiler.setEnabled( true );
+            sim.getWorld().setProfiler( profiler );
+        }
+        
+        long start = System.nanoTime();
+        
+        for ( int i = 0; i < frames; i++ ) {
+            scriptInput( input, i );
+            sim.stepFrame( delta );
+        }
+        
+        double seconds = ( System.nanoTime() - start ) / 1e9;
+        
+        System.out.printf( "%d frames in %.3f s (%.0f frames/s)%n", frames, seconds, frames / seconds );
+        System.out.printf( "player at (%.2f, %.2f)%n", sim.getWorld().getPlayer().rect.x, sim.getWorld().getPlayer().rect.y );
+        
+        if ( profile != null ) {
+            sim.getWorld().getProfiler().writeCsv( profile );
+            System.out.println( "frame profile saved to " + profile );
+        }
+        
+    }
+    
+    /**
+     * Entrada roteirizada: anda para a direita e para a esquerda a cada
+     * 300 frames, pulando de tempos em tempos.
+     */
+    private static void scriptInput( HeadlessInput input, int frame ) {
+        input.setKeyDown( EngineFrame.KEY_RIGHT, ( frame / 300 ) % 2 == 0 );
+        input.setKeyDown( EngineFrame.KEY_LEFT, ( frame / 300 ) % 2 == 1 );
+        input.setKeyDown( EngineFrame.KEY_SPACE, frame % 40 == 0 );
+    }
+    
+    /**
+     * Mede os bytes alocados por frame, somando todas as threads, depois de
+     * uma rodada de aquecimento, que leva os pools e arrays ao tamanho de
+     * regime e dá tempo ao JIT. A fase é longa e densa e o jogador a
+     * percorre, então a medição inclui o carregamento e o descarte de
+     * chunks e de imagens do cache de tiles; ela é feita em modo serial e
+     * em modo paralelo.
+     */
+    private static void allocationMain( int frames, double maxBytesPerFrame ) throws IOException {
+        
+        if ( !( ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean ) ) {
+            System.err.println( "allocation measurement not supported by this JVM" );
+            System.exit( 2 );
+        }
+        
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if ( !threads.isThreadAllocatedMemorySupported() ) {
+            System.err.println( "allocation measurement not supported by this JVM" );
+            System.exit( 2 );
+        }
+        threads.setThreadAllocatedMemoryEnabled( true );
+        
+        String map = Levels.generateDense( 1024, 20 );
+        boolean failed = false;
+        
+        for ( boolean parallel : new boolean[] { false, true } ) {
+            
+            HeadlessSimulation sim = new HeadlessSimulation( map );
+            sim.getWorld().setParallel( parallel );
+            HeadlessInput input = sim.getInput();
+            DrawList list = new DrawList();
+            double delta = 1.0 / 60;
+            
+            for ( int i = 0; i < frames; i++ ) {
+                travelInput( input, i );
+                sim.stepFrame( delta );
+                list.clear();
+                sim.draw( list );
+            }
+            
+            long before = allocatedBytes( threads );
+            
+            for ( int i = frames; i < frames * 2; i++ ) {
+                travelInput( input, i );
+                sim.stepFrame( delta );
+                list.clear();
+                sim.draw( list );
+            }
+            
+            long allocated = allocatedBytes( threads ) - before;
+            double perFrame = (double) allocated / frames;
+            
+            System.out.printf( "%s: %d bytes allocated in %d frames (%.3f bytes/frame, limit %.3f)%n",
+                parallel ? "parallel" : "serial", allocated, frames, perFrame, maxBytesPerFrame );
+            
+            if ( perFrame > maxBytesPerFrame ) {
+                failed = true;
+            }
+            
+        }
+        
+        if ( failed ) {
+            System.exit( 1 );
+        }
+        
+    }
+    
+    /**
+     * Bytes alocados até agora pelas threads vivas (threads que terminaram
+     * durante a medição não são contadas).
+     */
+    private static long allocatedBytes( com.sun.management.ThreadMXBean threads ) {
+        long total = 0;
+        for ( long bytes : threads.getThreadAllocatedBytes( threads.getAllThreadIds() ) ) {
+            if ( bytes > 0 ) {
+                total += bytes;
+            }
+        }
+        return total;
+    }
+    
+    /**
+     * Entrada roteirizada para fases longas: anda 3000 frames para a
+     * direita e 3000 para a esquerda, pulando de tempos em tempos.
+     */
+    private static void travelInput( HeadlessInput input, int frame ) {
+        input.setKeyDown( EngineFrame.KEY_RIGHT, ( frame / 3000 ) % 2 == 0 );
+        input.setKeyDown( EngineFrame.KEY_LEFT, ( frame / 3000 ) % 2 == 1 );
+        input.setKeyDown( EngineFrame.KEY_SPACE, frame % 40 == 0 );
+    }
+    
+    /**
+     * Simula a mesma fase densa em modo serial e em modo paralelo e termina
+     * com erro se os checksums divergirem em algum frame ou se a passada
+     * paralela nunca rodar.
+     */
+    private static void parallelMain( int frames ) {
+        
+        String map = Levels.generateDense( 1024, 32 );
+        HeadlessSimulation serial = new HeadlessSimulation( map );
+        HeadlessSimulation parallel = new HeadlessSimulation( map );
+        parallel.getWorld().setParallel( true );
+        double delta = 1.0 / 60;
+        int parallelFrames = 0;
+        
+        for ( int i = 0; i < frames; i++ ) {
+            
+            scriptInput( serial.getInput(), i );
+            scriptInput( parallel.getInput(), i );
+            serial.stepFrame( delta );
+            parallel.stepFrame( delta );
+            
+            if ( parallel.getWorld().isParallelPass() ) {
+                parallelFrames++;
+            }
+            
+            if ( serial.getWorld().checksum() != parallel.getWorld().checksum() ) {
+                System.err.println( "serial and parallel simulations diverged at frame " + i );
+                System.exit( 1 );
+            }
+            
+        }
+        
+        System.out.printf( "%d frames identical, %d of them with the parallel pass%n", frames, parallelFrames );
+        
+        if ( parallelFrames == 0 ) {
+            System.err.println( "the parallel pass never ran" );
+            System.exit( 1 );
+        }
+        
+    }
+    
+    private static void replayMain( Path path, Path profile ) throws IOException {
+        
+        InputRecording recording = InputRecording.read( path );
+        HeadlessSimulation sim = new HeadlessSimulation( LevelIO.read( Paths.get( recording.getLevelPath() ) ) );
+        
+        if ( profile != null ) {
+            FrameProfiler profiler = new FrameProfiler( recording.size() );
+            profiler.setEnabled( true );
+            sim.getWorld().setProfiler( profiler );
+        }
+        
+        long start = System.nanoTime();
+        int divergentFrame = sim.replay( recording );
+        double seconds = ( System.nanoTime() - start ) / 1e9;
+        
+        System.out.printf( "%d frames replayed in %.3f s (%.0f frames/s)%n", recording.size(), seconds, recording.size() / seconds );
+        
+        if ( divergentFrame < 0 ) {
+            System.out.println( "identical to the recording" );
+        } else {
+            System.out.println( "diverged from the recording at frame " + divergentFrame );
+        }
+        
+        if ( profile != null ) {
+            sim.getWorld().getProfiler().writeCsv( profile );
+            System.out.println( "frame profile saved to " + profile );
+        }
+        
+        if ( divergentFrame >= 0 ) {
+            System.exit( 1 );
+        }
+        
+    }
+    
+}
@@ -0,0 +1,193 @@
+package jsgeplatformer;
+
+import br.com.davidbuzatto.jsge.core.engine.EngineFrame;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gravação das entradas de uma partida, frame a frame, para reproduzi-la
+ * depois (veja ReplayInput).
+ *
+ * Cada frame guarda as teclas lidas pelo jogador (um byte: os bits 0 a 3
+ * indicam as teclas de KEYS seguradas e os bits 4 a 7 as que foram
+ * pressionadas no frame), o tempo do frame e o checksum do mundo depois
+ * do frame, que permite verificar se o replay continua idêntico. A fase
+ * e a configuração do FrameStepper vão no cabeçalho.
+ *
+ * Formato (compactado com gzip, inteiros em big-endian):
+ *
+ * <pre>
+ * "JSPR" versão fase(UTF) passoFixo(boolean) tickRate(double) maxPassos(int) frames(int)
+ * frames: (teclas: byte, delta: double, checksum: long) ...
+ * </pre>
+ *
+ * @author Prof. Dr. David Buzatto
+ */
+public class InputRecording {
+
+    public static final int[] KEYS = {
+        EngineFrame.KEY_LEFT, EngineFrame.KEY_RIGHT,
+        EngineFrame.KEY_CONTROL, EngineFrame.KEY_SPACE
+    };
+
+    private static final byte[] MAGIC = { 'J', 'S', 'P', 'R' };
+    private static final int VERSION = 1;
+
+    private String levelPath;
+    private boolean fixedTimestep;
+    private double tickRate;
+    private int maxStepsPerFrame;
+
+    private int frames;
+    private byte[] keys = new byte[1024];
+    private double[] deltas = new double[1024];
+    private long[] checksums = new long[1024];
+
+    public InputRecording( String levelPath, FrameStepper stepper ) {
+        this( levelPath, stepper.isFixedTimestep(), stepper.getTickRate(), stepper.getMaxStepsPerFrame() );
+    }
+
+    private InputRecording( String levelPath, boolean fixedTimestep, double tickRate, int maxStepsPerFrame ) {
+        this.levelPath = levelPath;
+        this.fixedTimestep = fixedTimestep;
+        this.tickRate = tickRate;
+        this.maxStepsPerFrame = maxStepsPerFrame;
+    }
+
+    /**
+     * Acrescenta um frame com as teclas de input no momento da chamada.
+     */
+    public synchronized void add( InputSource input, double delta, long checksum ) {
+
+        int mask = 0;
+        for ( int k = 0; k < KEYS.length; k++ ) {
+            if ( input.isKeyDown( KEYS[k] ) ) {
+                mask |= 1 << k;
+            }
+            if ( input.isKeyPressed( KEYS[k] ) ) {
+                mask |= 1 << ( k + 4 );
+            }
+        }
+
+        add( (byte) mask, delta, checksum );
+
+    }
+
+    private void add( byte mask, double delta, long checksum ) {
+
+        if ( frames == keys.length ) {
+            int capacity = frames * 2;
+            keys = Arrays.copyOf( keys, capacity );
+            deltas = Arrays.copyOf( deltas, capacity );
+            checksums = Arrays.copyOf( checksums, capacity );
+        }
+
+        keys[frames] = mask;
+        deltas[frames] = delta;
+        checksums[frames] = checksum;
+        frames++;
+
+    }
+
+    public boolean isKeyDown( int frame, int keyCode ) {
+        return isSet( frame, keyCode, 0 );
+    }
+
+    public boolean isKeyPressed( int frame, int keyCode ) {
+        return isSet( frame, keyCode, 4 );
+    }
+
+    private boolean isSet( int frame, int keyCode, int shift ) {
+        for ( int k = 0; k < KEYS.length; k++ ) {
+            if ( KEYS[k] == keyCode ) {
+                return ( keys[frame] & ( 1 << ( k + shift ) ) ) != 0;
+            }
+        }
+        return false;
+    }
+
+    public double getDelta( int frame ) {
+        return deltas[frame];
+    }
+
+    public long getChecksum( int frame ) {
+        return checksums[frame];
+    }
+
+    public int size() {
+        return frames;
+    }
+
+    public String getLevelPath() {
+        return levelPath;
+    }
+
+    /**
+     * Um FrameStepper com a mesma configuração usada na gravação.
+     */
+    public FrameStepper createStepper() {
+        return new FrameStepper( fixedTimestep, tickRate, maxStepsPerFrame );
+    }
+
+    public synchronized void write( Path path ) throws IOException {
+
+        try ( DataOutputStream out = new DataOutputStream( new BufferedOutputStream(
+                new GZIPOutputStream( Files.newOutputStream( path ) ) ) ) ) {
+
+            out.write( MAGIC );
+            out.writeInt( VERSION );
+            out.writeUTF( levelPath );
+            out.writeBoolean( fixedTimestep );
+            out.writeDouble( tickRate );
+            out.writeInt( maxStepsPerFrame );
+            out.writeInt( frames );
+
+            for ( int f = 0; f < frames; f++ ) {
+                out.writeByte( keys[f] );
+                out.writeDouble( deltas[f] );
+                out.writeLong( checksums[f] );
+            }
+
+        }
+
+    }
+
+    public static InputRecording read( Path path ) throws IOException {
+
+        try ( DataInputStream in = new DataInputStream( new BufferedInputStream(
+                new GZIPInputStream( Files.newInputStream( path ) ) ) ) ) {
+
+            for ( byte b : MAGIC ) {
+                if ( in.readByte() != b ) {
+                    throw new IOException( "not an input recording: " + path );
+                }
+            }
+
+            int version = in.readInt();
+            if ( version != VERSION ) {
+                throw new IOException( "unsupported input recording version " + version + ": " + path );
+            }
+
+            InputRecording recording = new InputRecording(
+                in.readUTF(), in.readBoolean(), in.readDouble(), in.readInt() );
+
+            int frames = in.readInt();
+            for ( int f = 0; f < frames; f++ ) {
+                recording.add( in.readByte(), in.readDouble(), in.readLong() );
+            }
+
+            return recording;
+
+        }
+
+    }
+
+}
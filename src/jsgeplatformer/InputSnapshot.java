@@ -0,0 +1,47 @@
+package jsgeplatformer;
+
+/**
+ * Cópia do estado das teclas de InputRecording.KEYS em um instante.
+ *
+ * A janela atualiza as teclas em outra thread; lendo o frame de uma cópia,
+ * o jogador e a gravação veem exatamente as mesmas teclas.
+ *
+ * @author Prof. Dr. David Buzatto
+ */
+public class InputSnapshot implements InputSource {
+
+    private boolean[] down = new boolean[InputRecording.KEYS.length];
+    private boolean[] pressed = new boolean[InputRecording.KEYS.length];
+
+    /**
+     * Copia o estado atual das teclas de input.
+     */
+    public void capture( InputSource input ) {
+        for ( int k = 0; k < InputRecording.KEYS.length; k++ ) {
+            down[k] = input.isKeyDown( InputRecording.KEYS[k] );
+            pressed[k] = input.isKeyPressed( InputRecording.KEYS[k] );
+        }
+    }
+
+    @Override
+    public boolean isKeyDown( int keyCode ) {
+        int k = indexOf( keyCode );
+        return k >= 0 && down[k];
+    }
+
+    @Override
+    public boolean isKeyPressed( int keyCode ) {
+        int k = indexOf( keyCode );
+        return k >= 0 && pressed[k];
+    }
+
+    private static int indexOf( int keyCode ) {
+        for ( int k = 0; k < InputRecording.KEYS.length; k++ ) {
+            if ( InputRecording.KEYS[k] == keyCode ) {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+}
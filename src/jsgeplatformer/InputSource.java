@@ -0,0 +1,17 @@
+package jsgeplatformer;
+
+/**
+ * Fonte do estado das teclas usado pela simulação.
+ * 
+ * A própria janela da engine é uma fonte, mas a simulação também pode
+ * ser alimentada sem janela (testes, bots, replays).
+ * 
+ * @author Prof. Dr. David Buzatto
+ */
+public interface InputSource {
+    
+    boolean isKeyDown( int keyCode );
+    
+    boolean isKeyPressed( int keyCode );
+    
+}
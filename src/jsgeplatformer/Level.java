@@ -0,0 +1,97 @@
+package jsgeplatformer;
+
+import java.util.Arrays;
+
+/**
+ * Conteúdo de uma fase, independente do formato do arquivo de origem.
+ *
+ * Os tiles são guardados como os caracteres da legenda (A a I), um byte por
+ * célula, e zero nas células vazias. As entidades (o, e e P) ficam em uma
+ * tabela à parte, na ordem em que aparecem no mapa.
+ *
+ * @author Prof. Dr. David Buzatto
+ */
+public class Level {
+
+    public static final byte EMPTY = 0;
+
+    private int columns;
+    private int lines;
+    private byte[] tiles;
+
+    private int entityCount;
+    private byte[] entityTypes = new byte[16];
+    private int[] entityColumns = new int[16];
+    private int[] entityLines = new int[16];
+
+    public Level( int columns, int lines ) {
+        this.columns = columns;
+        this.lines = lines;
+        this.tiles = new byte[columns * lines];
+    }
+
+    public static boolean isTile( char c ) {
+        return c >= 'A' && c <= 'I';
+    }
+
+    public static boolean isEntity( char c ) {
+        return c == 'o' || c == 'e' || c == 'P';
+    }
+
+    public char getTile( int column, int line ) {
+        return (char) tiles[line * columns + column];
+    }
+
+    public void setTile( int column, int line, char tile ) {
+        tiles[line * columns + column] = (byte) tile;
+    }
+
+    public void addEntity( char type, int column, int line ) {
+
+        if ( entityCount == entityTypes.length ) {
+            int capacity = entityCount * 2;
+            entityTypes = Arrays.copyOf( entityTypes, capacity );
+            entityColumns = Arrays.copyOf( entityColumns, capacity );
+            entityLines = Arrays.copyOf( entityLines, capacity );
+        }
+
+        entityTypes[entityCount] = (byte) type;
+        entityColumns[entityCount] = column;
+        entityLines[entityCount] = line;
+        entityCount++;
+
+    }
+
+    public int getEntityCount() {
+        return entityCount;
+    }
+
+    public char getEntityType( int i ) {
+        return (char) entityTypes[i];
+    }
+
+    public int getEntityColumn( int i ) {
+        return entityColumns[i];
+    }
+
+    public int getEntityLine( int i ) {
+        return entityLines[i];
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getLines() {
+        return lines;
+    }
+
+    /**
+     * Os tiles da fase, linha após linha. Usado pela leitura e escrita dos
+     * arquivos.
+     */
+    byte[] getTiles() {
+        return tiles;
+    }
+
+}
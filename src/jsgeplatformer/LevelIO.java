@@ -0,0 +1,338 @@
+package jsgeplatformer;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * Leitura e escrita de fases, no formato texto (a mesma legenda de Levels)
+ * ou no formato binário compacto.
+ *
+ * Formato binário (inteiros em big-endian):
+ *
+ * <pre>
+ * "JSPL" versão colunas linhas quantidadeDeEntidades
+ * entidades: (tipo: byte, coluna: int, linha: int) ...
+ * deslocamentos das linhas: long[linhas + 1], a partir do início do arquivo
+ * linhas: sequências de (tile: byte, repetições: varint) cobrindo as colunas
+ * </pre>
+ *
+ * O arquivo binário é mapeado em memória e, graças à tabela de
+ * deslocamentos, as linhas são decodificadas em paralelo.
+ *
+ * Uso do conversor: java jsgeplatformer.LevelIO entrada.txt saida.lvl
+ *
+ * @author Prof. Dr. David Buzatto
+ */
+public class LevelIO {
+
+    private static final byte[] MAGIC = { 'J', 'S', 'P', 'L' };
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = MAGIC.length + 4 * 4;
+    private static final int ENTITY_SIZE = 1 + 4 + 4;
+
+    /**
+     * Lê uma fase de um arquivo, em qualquer um dos dois formatos.
+     */
+    public static Level read( Path path ) throws IOException {
+        if ( isBinary( path ) ) {
+            return readBinary( path );
+        }
+        try ( BufferedReader in = Files.newBufferedReader( path, StandardCharsets.UTF_8 ) ) {
+            return readText( in );
+        }
+    }
+
+    public static Level parseText( String map ) {
+        try {
+            return readText( new StringReader( map ) );
+        } catch ( IOException exc ) {
+            throw new IllegalStateException( exc );
+        }
+    }
+
+    /**
+     * Lê uma fase em formato texto, linha a linha. Linhas vazias no fim do
+     * texto são ignoradas.
+     */
+    public static Level readText( Reader reader ) throws IOException {
+
+        BufferedReader in = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader( reader );
+        List<String> rows = new ArrayList<>();
+        int columns = 0;
+        int lines = 0;
+
+        String row;
+        while ( ( row = in.readLine() ) != null ) {
+            rows.add( row );
+            if ( !row.isEmpty() ) {
+                lines = rows.size();
+            }
+            columns = Math.max( columns, row.length() );
+        }
+
+        Level level = new Level( columns, lines );
+
+        for ( int line = 0; line < lines; line++ ) {
+            row = rows.get( line );
+            for ( int column = 0; column < row.length(); column++ ) {
+                char c = row.charAt( column );
+                if ( Level.isTile( c ) ) {
+                    level.setTile( column, line, c );
+                } else if ( Level.isEntity( c ) ) {
+                    level.addEntity( c, column, line );
+                }
+            }
+        }
+
+        return level;
+
+    }
+
+    public static void writeBinary( Level level, Path path ) throws IOException {
+
+        int columns = level.getColumns();
+        int lines = level.getLines();
+        byte[] tiles = level.getTiles();
+
+        // as linhas são codificadas antes para conhecer os deslocamentos
+        ByteArrayOutputStream rows = new ByteArrayOutputStream();
+        long[] offsets = new long[lines + 1];
+        long rowsStart = HEADER_SIZE + (long) level.getEntityCount() * ENTITY_SIZE + ( lines + 1 ) * 8L;
+
+        for ( int line = 0; line < lines; line++ ) {
+
+            offsets[line] = rowsStart + rows.size();
+            int base = line * columns;
+            int column = 0;
+
+            while ( column < columns ) {
+                byte tile = tiles[base + column];
+                int run = 1;
+                while ( column + run < columns && tiles[base + column + run] == tile ) {
+                    run++;
+                }
+                rows.write( tile );
+                writeVarInt( rows, run );
+                column += run;
+            }
+
+        }
+
+        offsets[lines] = rowsStart + rows.size();
+
+        try ( DataOutputStream out = new DataOutputStream( new BufferedOutputStream( Files.newOutputStream( path ) ) ) ) {
+
+            out.write( MAGIC );
+            out.writeInt( VERSION );
+            out.writeInt( columns );
+            out.writeInt( lines );
+            out.writeInt( level.getEntityCount() );
+
+            for ( int i = 0; i < level.getEntityCount(); i++ ) {
+                out.writeByte( level.getEntityType( i ) );
+                out.writeInt( level.getEntityColumn( i ) );
+                out.writeInt( level.getEntityLine( i ) );
+            }
+
+            for ( long offset : offsets ) {
+                out.writeLong( offset );
+            }
+
+            rows.writeTo( out );
+
+        }
+
+    }
+
+    /**
+     * Lê uma fase em formato binário. Cabeçalho, entidades e linhas
+     * inválidos são informados com uma IOException que diz onde está o
+     * problema.
+     */
+    public static Level readBinary( Path path ) throws IOException {
+
+        try ( FileChannel channel = FileChannel.open( path, StandardOpenOption.READ ) ) {
+
+            if ( channel.size() > Integer.MAX_VALUE ) {
+                throw new IOException( "level file too large to map: " + path );
+            }
+
+            if ( channel.size() < HEADER_SIZE ) {
+                throw new IOException( "not a binary level file: " + path );
+            }
+
+            MappedByteBuffer buffer = channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+
+            for ( byte b : MAGIC ) {
+                if ( buffer.get() != b ) {
+                    throw new IOException( "not a binary level file: " + path );
+                }
+            }
+
+            int version = buffer.getInt();
+            if ( version != VERSION ) {
+                throw new IOException( "unsupported level file version " + version + ": " + path );
+            }
+
+            int columns = buffer.getInt();
+            int lines = buffer.getInt();
+            int entityCount = buffer.getInt();
+
+            long rowsStart = HEADER_SIZE + (long) entityCount * ENTITY_SIZE + ( lines + 1L ) * 8;
+            if ( columns < 0 || lines < 0 || (long) columns * lines > Integer.MAX_VALUE ||
+                 entityCount < 0 || rowsStart > buffer.limit() ) {
+                throw new IOException( "corrupted level header: " + path );
+            }
+
+            Level level = new Level( columns, lines );
+
+            for ( int i = 0; i < entityCount; i++ ) {
+                char type = (char) buffer.get();
+                int column = buffer.getInt();
+                int line = buffer.getInt();
+                if ( !Level.isEntity( type ) || column < 0 || column >= columns || line < 0 || line >= lines ) {
+                    throw new IOException( "corrupted level entity " + i + ": " + path );
+                }
+                level.addEntity( type, column, line );
+            }
+
+            long[] offsets = new long[lines + 1];
+            for ( int line = 0; line <= lines; line++ ) {
+                offsets[line] = buffer.getLong();
+                long min = line == 0 ? rowsStart : offsets[line - 1];
+                if ( offsets[line] < min || offsets[line] > buffer.limit() ) {
+                    throw new IOException( "corrupted level row offset " + line + ": " + path );
+                }
+            }
+
+            /*
+             * Leituras absolutas não alteram o buffer, então as threads o
+             * compartilham. Uma linha corrompida não interrompe as demais:
+             * a primeira é informada depois que todas terminaram.
+             */
+            byte[] tiles = level.getTiles();
+            AtomicInteger corruptedRow = new AtomicInteger( lines );
+            IntStream.range( 0, lines ).parallel().forEach( line -> {
+                if ( !decodeRow( buffer, (int) offsets[line], (int) offsets[line + 1], tiles, line * columns, columns ) ) {
+                    corruptedRow.accumulateAndGet( line, Math::min );
+                }
+            });
+
+            if ( corruptedRow.get() < lines ) {
+                throw new IOException( "corrupted level row " + corruptedRow.get() + ": " + path );
+            }
+
+            return level;
+
+        }
+
+    }
+
+    /**
+     * Decodifica a linha que ocupa [from, to) do buffer.
+     *
+     * @return false se a linha estiver corrompida: tiles desconhecidos,
+     * repetições truncadas ou que não somam exatamente columns.
+     */
+    private static boolean decodeRow( ByteBuffer buffer, int from, int to, byte[] tiles, int base, int columns ) {
+
+        int p = from;
+        int column = 0;
+
+        while ( p < to ) {
+
+            byte tile = buffer.get( p++ );
+            if ( tile != Level.EMPTY && !Level.isTile( (char) tile ) ) {
+                return false;
+            }
+
+            int run = 0;
+            int shift = 0;
+            byte b;
+            do {
+                if ( p == to || shift > 28 ) {
+                    return false;
+                }
+                b = buffer.get( p++ );
+                run |= ( b & 0x7F ) << shift;
+                shift += 7;
+            } while ( b < 0 );
+
+            if ( run <= 0 || run > columns - column ) {
+                return false;
+            }
+
+            if ( tile != Level.EMPTY ) {
+                for ( int i = 0; i < run; i++ ) {
+                    tiles[base + column + i] = tile;
+                }
+            }
+            column += run;
+
+        }
+
+        return column == columns;
+
+    }
+
+    private static void writeVarInt( ByteArrayOutputStream out, int value ) {
+        while ( ( value & ~0x7F ) != 0 ) {
+            out.write( ( value & 0x7F ) | 0x80 );
+            value >>>= 7;
+        }
+        out.write( value );
+    }
+
+    private static boolean isBinary( Path path ) throws IOException {
+        try ( InputStream in = Files.newInputStream( path ) ) {
+            byte[] header = in.readNBytes( MAGIC.length );
+            for ( int i = 0; i < MAGIC.length; i++ ) {
+                if ( header.length != MAGIC.length || header[i] != MAGIC[i] ) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Converte uma fase do formato texto para o binário.
+     */
+    public static void main( String[] args ) throws IOException {
+
+        if ( args.length != 2 ) {
+            System.err.println( "usage: java jsgeplatformer.LevelIO input.txt output.lvl" );
+            System.exit( 1 );
+        }
+
+        Path input = Paths.get( args[0] );
+        Path output = Paths.get( args[1] );
+
+        Level level = read( input );
+        writeBinary( level, output );
+
+        System.out.printf( "%s: %dx%d tiles, %d entities, %d -> %d bytes%n",
+            output, level.getColumns(), level.getLines(), level.getEntityCount(),
+            Files.size( input ), Files.size( output ) );
+
+    }
+
+}
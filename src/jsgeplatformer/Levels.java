@@ -0,0 +1,86 @@
+package jsgeplatformer;
+
+/**
+ * Fases do jogo e gerador de fases para medições de desempenho.
+ * 
+ * Legenda: A a I são tiles sólidos, o é uma moeda, e é um inimigo e P é
+ * a posição inicial do jogador.
+ * 
+ * @author Prof. Dr. David Buzatto
+ */
+public class Levels {
+    
+    /**
+     * Caminho da primeira fase, relativo ao diretório do jogo.
+     */
+    public static final String LEVEL_1_PATH = "resources/levels/level1.txt";
+    
+    /**
+     * Gera um mapa plano de tamanho arbitrário, com plataformas, moedas e
+     * inimigos espalhados, usado em medições de desempenho.
+     * 
+     * Os inimigos ficam em camadas sobre o chão, no máximo um por coluna
+     * em cada camada; o mapa ganha uma linha para cada camada além da
+     * primeira.
+     * 
+     * @param columns Quantidade de colunas (no mínimo 8).
+     * @param enemies Quantidade de inimigos.
+     */
+    public static String generate( int columns, int enemies ) {
+        
+        int free = columns - 4;
+        int layers = Math.max( ( enemies + free - 1 ) / free, 1 );
+        int lines = 18 + layers;
+        char[][] map = new char[lines][columns];
+        
+        for ( int line = 0; line < lines; line++ ) {
+            for ( int column = 0; column < columns; column++ ) {
+                map[line][column] = ' ';
+            }
+            map[line][0] = 'D';
+            map[line][columns - 1] = 'C';
+        }
+        
+        for ( int column = 0; column < columns; column++ ) {
+            map[lines - 2][column] = 'B';
+            map[lines - 1][column] = 'A';
+        }
+        
+        for ( int column = 10; column + 5 < columns - 1; column += 20 ) {
+            for ( int k = 0; k < 5; k++ ) {
+                map[11][column + k] = 'I';
+            }
+        }
+        
+        for ( int column = 6; column < columns - 1; column += 8 ) {
+            map[lines - 3][column] = 'o';
+        }
+        
+        for ( int layer = 0; layer < layers; layer++ ) {
+            int count = Math.min( enemies - layer * free, free );
+            for ( int i = 0; i < count; i++ ) {
+                map[lines - 3 - layer][2 + (int) ( (long) i * free / count )] = 'e';
+            }
+        }
+        
+        map[14][4] = 'P';
+        
+        StringBuilder sb = new StringBuilder( lines * ( columns + 1 ) );
+        for ( char[] line : map ) {
+            sb.append( line ).append( '\n' );
+        }
+        
+        return sb.toString();
+        
+    }
+    
+    /**
+     * Gera um mapa como generate, com enemiesPerColumn inimigos empilhados
+     * em cada coluna livre, para que a região ativa tenha inimigos
+     * suficientes para a atualização paralela (veja World.setParallel).
+     */
+    public static String generateDense( int columns, int enemiesPerColumn ) {
+        return generate( columns, ( columns - 4 ) * enemiesPerColumn );
+    }
+    
+}
@@ -2,52 +2,120 @@ package jsgeplatformer;
 
 import br.com.davidbuzatto.jsge.core.Camera2D;
 import br.com.davidbuzatto.jsge.core.engine.EngineFrame;
+import br.com.davidbuzatto.jsge.core.utils.ColorUtils;
 import br.com.davidbuzatto.jsge.geom.Rectangle;
 import br.com.davidbuzatto.jsge.image.Image;
-import br.com.davidbuzatto.jsge.image.ImageUtils;
-import br.com.davidbuzatto.jsge.sound.Music;
-import br.com.davidbuzatto.jsge.sound.Sound;
-import java.util.ArrayList;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
 
 /**
  * JSGE basic game template.
  *
  * @author Prof. Dr. David Buzatto
  */
-public class Main extends EngineFrame {
+public class Main extends EngineFrame implements InputSource, DrawTarget {
+
+    private static String levelPath = Levels.LEVEL_1_PATH;
+    
+    /*
+     * With --record, the input of each frame is recorded and saved when
+     * the window closes; with --replay, a recording is played back in
+     * place of the keyboard and the world checksum of each frame is
+     * compared with the recorded one.
+     */
+    private static Path recordPath;
+    private static InputRecording recording;
+    private static ReplayInput replay;
+    
+    /*
+     * Simulation steps per second of the fixed timestep, set with
+     * --tick-rate; a replay uses the rate it was recorded with.
+     */
+    private static double tickRate = 60;
+    
+    /*
+     * With --parallel, the enemies of large active regions are updated
+     * on several threads (see World.setParallel).
+     */
+    private static boolean parallel;
 
     public Main() {
         super( 800, 448, "JSGE Platformer", 60, false );
     }
 
-    public static final double GRAVITY = 20;
-    public static final double MAX_FALL_SPEED = 400;
-    public static final double SPRITE_WIDTH = 32;
-
+    /*
+     * The world is published last by createWorld(), after everything the
+     * drawing reads, since draw() may run at any time on the window
+     * thread; while it is null, the loading screen is drawn.
+     */
+    private volatile World world;
     private Player player;
-    private List<Block> blocks;
-    
-    private List<Coin> coins;
-    private Animation baseCoinAnimation;
-    private Sound coinSound;
+    private TileChunkCache chunkCache;
     
-    private List<Enemy> enemies;
-    private Animation enemyWalkRight;
-    private Animation enemyWalkLeft;
-    private Sound kickSound;
+    /*
+     * The flipped sprites of the player and the enemies come from here;
+     * its hit, miss and eviction counters are shown below the profiler.
+     */
+    private SpriteVariants variants;
     
-    private Music music;
+    private double alpha = 1;
     
     private Camera2D camera;
-    private double worldWidth;
-    private double worldHeight;
+    private Rectangle viewArea;
+    
+    private ParallaxBackground background;
+    
+    /*
+     * The engine calls create() and starts the game loop from its own
+     * constructor, before the field initializers of this class run, so
+     * the stepper (fixed timestep, see FrameStepper), the profiler, the
+     * key snapshot, the sound effect mixer, the music player and the draw
+     * pipeline are assigned in create().
+     *
+     * The keys are copied once per frame, since the window changes them on
+     * its own thread; the player reads the copy and the recording stores it.
+     *
+     * F3 turns the per-phase frame profiler and its overlay on and off;
+     * F4 saves the frames it holds to a CSV file. Frames are closed at the
+     * end of update().
+     *
+     * Each frame is recorded into a DrawList at the end of update() and
+     * the window draws the latest recorded frame, so the simulation of the
+     * next frame runs while the previous one is drawn, and the window
+     * thread never reads the world, which the update thread is changing.
+     */
+    private FrameStepper stepper;
+    private FrameProfiler profiler;
+    private InputSnapshot keys;
+    private SoundEffects soundEffects;
+    private MusicPlayer music;
+    private DrawPipeline pipeline;
     
-    private Map<Character, Image> tileImages;
-    private Image background;
-    private int backgroundTimes;
+    /*
+     * Assets load in parallel while a loading screen is drawn. The world is
+     * created as soon as the required ones are ready; if one of them
+     * fails, the loading screen shows the error. The sound effects are
+     * optional: the game starts without them and they are handed to the
+     * world when they finish loading. The music is not an asset: the
+     * player streams it from the file, decoding a little ahead in the
+     * background.
+     */
+    private AssetLoader loader;
+    private volatile String loadError;
+    private boolean soundsPending = true;
+    private Future<Level> levelAsset;
+    private Future<SpriteAtlas> atlasAsset;
+    private Future<Image> backgroundAsset;
+    private Future<SoundEffect> coinSoundAsset;
+    private Future<SoundEffect> kickSoundAsset;
+    private Future<SoundEffect> jumpSoundAsset;
     
     /**
      * Creates the game world.
@@ -56,42 +124,75 @@ public class Main extends EngineFrame {
      */
     @Override
     public void create() {
-
-        List<Image> playerWalkRightImages = new ArrayList<>();
-        playerWalkRightImages.add( loadImage( "resources/images/SmallMario_0.png" ) );
-        playerWalkRightImages.add( loadImage( "resources/images/SmallMario_1.png" ) );
-        Animation playerWalkRight = new Animation( 2, 0.15, playerWalkRightImages );
-        
-        List<Image> playerWalkLeftImages = new ArrayList<>();
-        playerWalkLeftImages.add( ImageUtils.imageFlipHorizontal( playerWalkRightImages.get( 0 ) ) );
-        playerWalkLeftImages.add( ImageUtils.imageFlipHorizontal( playerWalkRightImages.get( 1 ) ) );
-        Animation playerWalkLeft = new Animation( 2, 0.15, playerWalkLeftImages );
-        
-        List<Image> coinImages = new ArrayList<>();
-        coinImages.add( loadImage( "resources/images/Coin_0.png" ) );
-        coinImages.add( loadImage( "resources/images/Coin_1.png" ) );
-        coinImages.add( loadImage( "resources/images/Coin_2.png" ) );
-        coinImages.add( loadImage( "resources/images/Coin_3.png" ) );
-        baseCoinAnimation = new Animation( 4, 0.1, coinImages );
-        
-        List<Image> enemyWalkRightImages = new ArrayList<>();
-        enemyWalkRightImages.add( loadImage( "resources/images/Goomba_0.png" ) );
-        enemyWalkRightImages.add( loadImage( "resources/images/Goomba_1.png" ) );
-        enemyWalkRight = new Animation( 2, 0.15, enemyWalkRightImages );
-        
-        List<Image> enemyWalkLeftImages = new ArrayList<>();
-        enemyWalkLeftImages.add( ImageUtils.imageFlipHorizontal( enemyWalkRightImages.get( 0 ) ) );
-        enemyWalkLeftImages.add( ImageUtils.imageFlipHorizontal( enemyWalkRightImages.get( 1 ) ) );
-        enemyWalkLeft = new Animation( 2, 0.15, enemyWalkLeftImages );
-        
-        background = loadImage( "resources/images/background1.png" );
-        
-        coinSound = loadSound( "resources/sfx/coin.wav" );
-        kickSound = loadSound( "resources/sfx/kick.wav" );
-        music = loadMusic( "resources/musics/music1.mp3" );
-        music.play();
-        
-        player = new Player(
+        
+        profiler = new FrameProfiler();
+        keys = new InputSnapshot();
+        soundEffects = new SoundEffects();
+        soundEffects.start();
+        music = new MusicPlayer();
+        music.start();
+        music.play( "resources/musics/music1.mp3", 0 );
+        stepper = replay != null ? replay.getRecording().createStepper() : new FrameStepper( true, tickRate, 5 );
+        pipeline = new DrawPipeline();
+        
+        loader = new AssetLoader();
+        levelAsset = loader.loadLevel( levelPath, true );
+        atlasAsset = loader.loadAtlas( SpriteAtlas.DEFAULT_IMAGE_DIR, SpriteAtlas.DEFAULT_CACHE_DIR, true );
+        backgroundAsset = loader.loadImage( "resources/images/background1.png", true );
+        coinSoundAsset = loader.loadSoundEffect( soundEffects, "resources/sfx/coin.wav", 4, false );
+        kickSoundAsset = loader.loadSoundEffect( soundEffects, "resources/sfx/kick.wav", 4, false );
+        jumpSoundAsset = loader.loadSoundEffect( soundEffects, "resources/sfx/jump.wav", 2, false );
+        loader.shutdown();
+        
+        if ( recordPath != null ) {
+            recording = new InputRecording( levelPath, stepper );
+            addWindowListener( new WindowAdapter() {
+                @Override
+                public void windowClosing( WindowEvent e ) {
+                    saveRecording();
+                }
+            });
+        }
+        
+    }
+    
+    /**
+     * Creates the world once the required assets are loaded, without the
+     * sound effects (see attachSounds).
+     */
+    private void createWorld() {
+        
+        SpriteAtlas atlas = AssetLoader.get( atlasAsset );
+        SpriteVariants variants = new SpriteVariants( atlas );
+        
+        Animation playerWalkRight = new Animation( 2, 0.15, List.of( 
+            atlas.get( "SmallMario_0" ), 
+            atlas.get( "SmallMario_1" )
+        ));
+        
+        Animation playerWalkLeft = new Animation( 2, 0.15, List.of( 
+            variants.getFlipped( atlas.get( "SmallMario_0" ) ), 
+            variants.getFlipped( atlas.get( "SmallMario_1" ) )
+        ));
+        
+        Animation baseCoinAnimation = new Animation( 4, 0.1, List.of( 
+            atlas.get( "Coin_0" ), 
+            atlas.get( "Coin_1" ), 
+            atlas.get( "Coin_2" ), 
+            atlas.get( "Coin_3" )
+        ));
+        
+        Animation enemyWalkRight = new Animation( 2, 0.15, List.of( 
+            atlas.get( "Goomba_0" ), 
+            atlas.get( "Goomba_1" )
+        ));
+        
+        Animation enemyWalkLeft = new Animation( 2, 0.15, List.of( 
+            variants.getFlipped( atlas.get( "Goomba_0" ) ), 
+            variants.getFlipped( atlas.get( "Goomba_1" ) )
+        ));
+        
+        Player player = new Player(
             new Rectangle( 
                 getScreenWidth() / 2, getScreenHeight() / 2,
                 32, 40
@@ -99,50 +200,53 @@ public class Main extends EngineFrame {
             250,
             400,
             400,
-            loadSound( "resources/sfx/jump.wav" ),
+            null,
             BLUE,
             playerWalkRight,
             playerWalkLeft,
-            loadImage( "resources/images/SmallMarioJumping_0.png"),
-            loadImage( "resources/images/SmallMarioJumpingAndRunning_0.png"),
-            loadImage( "resources/images/SmallMarioFalling_0.png")
+            atlas.get( "SmallMarioJumping_0" ),
+            variants.getFlipped( atlas.get( "SmallMarioJumping_0" ) ),
+            atlas.get( "SmallMarioJumpingAndRunning_0" ),
+            variants.getFlipped( atlas.get( "SmallMarioJumpingAndRunning_0" ) ),
+            atlas.get( "SmallMarioFalling_0" ),
+            variants.getFlipped( atlas.get( "SmallMarioFalling_0" ) )
         );
         
-        tileImages = new HashMap<>();
+        Map<Character, Sprite> tileSprites = new HashMap<>();
         for ( char c = 'A'; c <= 'I'; c++ ) {
-            tileImages.put( c, loadImage( String.format( "resources/images/tile_%c.png", c ) ) );
+            tileSprites.put( c, atlas.get( "tile_" + c ) );
         }
         
-        processMap(
-            """
-            D                                                              C
-            D                                                              C
-            D                                                              C
-            D                                                              C
-            D                                                              C
-            DIIIIIIIIIIIIIIIIIIII    IIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIC
-            D                                                              C
-            D                                                              C
-            D                    IIIII                                     C
-            D                                                              C
-            D                                                              C
-            D                IIIII                                         C
-            D                                                              C
-            D                                   EBBBBBBF                   C
-            D    P       IIIII                  CAAAAAAD                   C
-            D                                EBBGAAAAAAD                   C
-            D      o o o o o    e  e  e      CAAAAAAAAAD                   C
-            HBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBGAAAAAAAAAHBBBBBBBBBBBBBBBBBBBG
-            AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA
-            """
+        World world = new World(
+            player, tileSprites,
+            baseCoinAnimation, null,
+            enemyWalkRight, enemyWalkLeft, null,
+            getScreenWidth(), getScreenHeight()
+        );
+        world.setProfiler( profiler );
+        world.setParallel( parallel );
+        world.load( AssetLoader.get( levelAsset ) );
+        
+        Image backgroundImage = AssetLoader.get( backgroundAsset );
+        int backgroundTimes = (int) ( world.getWorldWidth() / backgroundImage.getWidth() + 1 );
+        ParallaxBackground background = new ParallaxBackground( getScreenWidth() / world.getCamera().zoom );
+        background.addLayer( 
+            backgroundImage, SKYBLUE, 
+            world.getWorldHeight() - backgroundImage.getHeight(), 
+            1, 1, 
+            backgroundTimes * backgroundImage.getWidth()
         );
         
-        backgroundTimes = (int) ( worldWidth / background.getWidth() + 1 );
+        this.player = player;
+        this.variants = variants;
+        this.background = background;
+        camera = world.getCamera();
+        viewArea = new Rectangle();
+        chunkCache = new TileChunkCache( world.getTileMap(), 16, 1 );
+        updateViewArea();
+        chunkCache.prepare( viewArea.x, viewArea.y, viewArea.width, viewArea.height );
         
-        camera = new Camera2D();
-        camera.offset.x = getScreenWidth() / 2;
-        camera.offset.y = getScreenHeight() / 2;
-        updateCamera();
+        this.world = world;
 
     }
 
@@ -156,27 +260,70 @@ public class Main extends EngineFrame {
     public void update() {
 
         double delta = getFrameTime();
-
-        player.update( delta, this );
         
-        for ( Coin c : coins ) {
-            c.update( delta );
+        if ( world == null ) {
+            if ( loadError != null || !loader.isRequiredDone() ) {
+                return;
+            }
+            try {
+                createWorld();
+            } catch ( RuntimeException exc ) {
+                Throwable cause = exc.getCause() != null ? exc.getCause() : exc;
+                loadError = cause.getMessage() != null ? cause.getMessage() : cause.toString();
+                System.err.println( "could not load the game: " + loadError );
+                return;
+            }
         }
         
-        for ( Enemy e : enemies ) {
-            e.update( delta, this );
+        attachSounds();
+        
+        if ( isKeyPressed( KEY_F3 ) ) {
+            profiler.setEnabled( !profiler.isEnabled() );
         }
         
-        resolveCollisionPlayerBlocks();
-        resolveCollisionPlayerCoins();
-        resolveCollisionEnemiesBlocks();
-        resolveCollisionPlayerEnemies();
+        if ( isKeyPressed( KEY_F4 ) && profiler.getFrameCount() > 0 ) {
+            saveProfile();
+        }
+        
+        InputSource input = keys;
+        if ( replay != null ) {
+            if ( replay.hasNext() ) {
+                delta = replay.next();
+                input = replay;
+            } else {
+                finishReplay();
+            }
+        }
+        if ( input == keys ) {
+            keys.capture( this );
+        }
+        
+        profiler.begin( FrameProfiler.INPUT );
+        player.readInput( input );
+        profiler.end( FrameProfiler.INPUT );
         
-        if ( music.isStopped() ) {
-            music.play();
+        stepper.advance( world, delta );
+        alpha = stepper.getAlpha();
+        
+        if ( input == replay ) {
+            replay.check( world.checksum() );
+        } else if ( recording != null ) {
+            recording.add( keys, delta, world.checksum() );
         }
         
-        updateCamera();
+        /*
+         * The chunks are baked here, on the thread that streams the level
+         * in and out and so changes the tile map; drawing only blits them.
+         */
+        DrawList list = pipeline.beginFrame();
+        chunkCache.setFrame( list.getFrame(), pipeline.getOldestFrameInUse() );
+        updateViewArea();
+        chunkCache.update( viewArea.x, viewArea.y, viewArea.width, viewArea.height );
+        
+        drawFrame( list );
+        pipeline.publish();
+        
+        profiler.endFrame();
 
     }
 
@@ -190,243 +337,232 @@ public class Main extends EngineFrame {
 
         clearBackground( WHITE );
         setFontSize( 20 );
-
-        beginMode2D( camera );
         
-        for ( int i = 0; i < backgroundTimes; i++ ) {
-            drawImage( background, i * background.getWidth(), worldHeight - background.getHeight(), SKYBLUE );
+        if ( world == null ) {
+            drawLoadingScreen();
+            return;
         }
         
-        for ( Block b : blocks ) {
-            b.draw( this );
+        DrawList list = pipeline.acquire();
+        if ( list != null ) {
+            profiler.begin( FrameProfiler.DRAW );
+            list.draw( this );
+            profiler.end( FrameProfiler.DRAW );
         }
+        profiler.endDraw();
         
-        for ( Coin c : coins ) {
-            c.draw( this );
+        if ( profiler.isEnabled() ) {
+            double x = getScreenWidth() - 330;
+            double y = 10 + profiler.draw( this, x, 10 );
+            drawVariantStats( x, y + 5 );
         }
+
+    }
+    
+    /**
+     * Draws the counters of the sprite variant cache, below the profiler.
+     */
+    private void drawVariantStats( double x, double y ) {
+        fillRectangle( x, y, 320, 24, ColorUtils.fade( BLACK, 0.7 ) );
+        drawText( String.format( "variants: %d hits, %d misses, %d evictions",
+            variants.getHits(), variants.getMisses(), variants.getEvictions() ),
+            x + 10, y + 6, 12, WHITE );
+    }
+    
+    /**
+     * Records the world and the HUD into the DrawList of the frame.
+     */
+    private void drawFrame( DrawTarget target ) {
+
+        target.beginMode2D( camera );
         
-        for ( Enemy e : enemies ) {
-            e.draw( this );
+        profiler.begin( FrameProfiler.BACKGROUND );
+        background.draw( target, viewArea.x, viewArea.y, viewArea.width, viewArea.height );
+        profiler.end( FrameProfiler.BACKGROUND );
+        
+        profiler.begin( FrameProfiler.TILES );
+        chunkCache.draw( target, viewArea.x, viewArea.y, viewArea.width, viewArea.height );
+        profiler.end( FrameProfiler.TILES );
+        
+        profiler.begin( FrameProfiler.ENTITIES );
+        CoinStore coins = world.getCoins();
+        for ( int i = 0; i < coins.size; i++ ) {
+            if ( !coins.collected[i] && isVisible( coins.x[i], coins.y[i], coins.width, coins.height ) ) {
+                coins.draw( target, i );
+            }
         }
         
-        player.draw( this );
+        EnemyStore enemies = world.getEnemies();
+        SweepAndPrune broadphase = world.getBroadphase();
+        double minX = viewArea.x - enemies.width / 2;
+        double maxX = viewArea.x + viewArea.width + enemies.width / 2;
+        int enemyCount = broadphase.query( enemies, minX, maxX );
+        int[] visibleEnemies = broadphase.getResult();
+        for ( int k = 0; k < enemyCount; k++ ) {
+            int i = visibleEnemies[k];
+            if ( !enemies.dead[i] && isVisible( enemies.x[i] - enemies.width / 2, enemies.y[i] - enemies.height / 2, enemies.width, enemies.height ) ) {
+                enemies.draw( target, i, alpha );
+            }
+        }
+        
+        player.draw( target, alpha );
+        profiler.end( FrameProfiler.ENTITIES );
         
-        endMode2D();
+        target.endMode2D();
         
-        drawFPS( 20, 20 );
+        target.drawFPS( 20, 20 );
 
     }
 
-    private void resolveCollisionPlayerBlocks() {
-        
-        for ( Block b : blocks ) {
-            
-            Player.CollisionType ct = player.checkCollision( b );
-            
-            switch ( ct ) {
-                case LEFT:
-                    player.rect.x = b.rect.x + b.rect.width + player.rect.width / 2;
-                    break;
-                case RIGHT:
-                    player.rect.x = b.rect.x - player.rect.width / 2;
-                    break;
-                case UP:
-                    player.rect.y = b.rect.y + b.rect.height + player.rect.height / 2;
-                    player.vel.y = 0;
-                    break;
-                case DOWN:
-                    player.rect.y = b.rect.y - player.rect.height / 2;
-                    player.setOnGround();
-                    break;
-            }
-            
-            player.updateCollisionProbes();
-            
+    /**
+     * Hands the sound effects to the world once all of them finished
+     * loading; the ones that failed stay silent.
+     */
+    private void attachSounds() {
+        if ( soundsPending && coinSoundAsset.isDone() && kickSoundAsset.isDone() && jumpSoundAsset.isDone() ) {
+            world.setSounds( AssetLoader.getOptional( coinSoundAsset ), AssetLoader.getOptional( kickSoundAsset ) );
+            player.setJumpSound( AssetLoader.getOptional( jumpSoundAsset ) );
+            soundsPending = false;
         }
-        
     }
     
-    private void resolveCollisionPlayerEnemies() {
+    /**
+     * Draws the progress of the required assets, or the error that stopped
+     * them from loading.
+     */
+    private void drawLoadingScreen() {
         
-        for ( Enemy e : enemies ) {
-            
-            if ( !e.dead ) {
-                
-                Player.CollisionType ct = player.checkCollision( e );
-
-                switch ( ct ) {
-                    case LEFT:
-                        break;
-                    case RIGHT:
-                        break;
-                    case UP:
-                        break;
-                    case DOWN:
-                        player.rect.y = e.rect.y - e.rect.height / 2 - player.rect.height / 2;
-                        player.jump( true );
-                        player.updateCollisionProbes();
-                        e.kill();
-                        break;
-                }
-                
-            }
-            
+        double width = getScreenWidth() / 2;
+        double x = ( getScreenWidth() - width ) / 2;
+        double y = getScreenHeight() / 2;
+        
+        String error = loadError;
+        if ( error != null ) {
+            drawText( "Could not load the game:", x, y - 30, 20, RED );
+            drawText( error, x, y, 14, BLACK );
+            return;
         }
         
+        drawText( "Loading...", x, y - 30, 20, BLACK );
+        fillRectangle( x, y, width * loader.getRequiredProgress(), 20, BLUE );
+        drawRectangle( x, y, width, 20, BLACK );
+        
     }
     
-    private void resolveCollisionEnemiesBlocks() {
-        
-        for ( Enemy e : enemies ) {
-            
-            for ( Block b : blocks ) {
-
-                Enemy.CollisionType ct = e.checkCollision( b );
-
-                switch ( ct ) {
-                    case LEFT:
-                        e.rect.x = b.rect.x + b.rect.width + e.rect.width / 2;
-                        e.turn();
-                        break;
-                    case RIGHT:
-                        e.rect.x = b.rect.x - e.rect.width / 2;
-                        e.turn();
-                        break;
-                    case UP:
-                        e.rect.y = b.rect.y + b.rect.height + e.rect.height / 2;
-                        e.vel.y = 0;
-                        break;
-                    case DOWN:
-                        e.rect.y = b.rect.y - e.rect.height / 2;
-                        e.setOnGround();
-                        break;
-                }
-
-                e.updateCollisionProbes();
-
-            }
-            
+    /**
+     * Reports the outcome of the replay and hands the game back to the
+     * keyboard.
+     */
+    private void finishReplay() {
+        if ( replay.getDivergentFrame() < 0 ) {
+            System.out.println( "replay finished: " + replay.getRecording().size() + " frames, identical" );
+        } else {
+            System.out.println( "replay finished: diverged at frame " + replay.getDivergentFrame() );
         }
-        
+        replay = null;
+    }
+    
+    private void saveRecording() {
+        try {
+            recording.write( recordPath );
+            System.out.println( recording.size() + " frames recorded to " + recordPath.toAbsolutePath() );
+        } catch ( IOException exc ) {
+            System.err.println( "could not save the recording: " + exc.getMessage() );
+        }
+    }
+    
+    /**
+     * Saves the profiled frames next to the game, one file per save.
+     */
+    private void saveProfile() {
+        Path path = Paths.get( "profile-" + System.currentTimeMillis() + ".csv" );
+        try {
+            profiler.writeCsv( path );
+            System.out.println( "frame profile saved to " + path.toAbsolutePath() );
+        } catch ( IOException exc ) {
+            System.err.println( "could not save the frame profile: " + exc.getMessage() );
+        }
+    }
+    
+    /**
+     * Computes the world rectangle seen through the camera.
+     */
+    private void updateViewArea() {
+        viewArea.width = getScreenWidth() / camera.zoom;
+        viewArea.height = getScreenHeight() / camera.zoom;
+        viewArea.x = camera.target.x - camera.offset.x / camera.zoom;
+        viewArea.y = camera.target.y - camera.offset.y / camera.zoom;
+    }
+    
+    private boolean isVisible( double x, double y, double width, double height ) {
+        return x < viewArea.x + viewArea.width && x + width > viewArea.x &&
+               y < viewArea.y + viewArea.height && y + height > viewArea.y;
     }
     
-    private void resolveCollisionPlayerCoins() {
+    /**
+     * Starts the game, optionally with the path of a level file (text or
+     * binary, see LevelIO), --record or --replay followed by the path
+     * of an input recording, --tick-rate followed by the simulation steps
+     * per second and --parallel. A replay uses the level and the tick
+     * rate it was recorded with.
+     */
+    public static void main( String[] args ) throws IOException {
         
-        for ( Coin c : coins ) {
-            if ( !c.collected ) {
-                if ( player.checkCollision( c ) ) {
-                    c.collect();
-                }
+        for ( int i = 0; i < args.length; i++ ) {
+            switch ( args[i] ) {
+                case "--record":
+                    recordPath = Paths.get( argument( args, ++i ) );
+                    break;
+                case "--tick-rate":
+                    tickRate = parseTickRate( argument( args, ++i ) );
+                    break;
+                case "--parallel":
+                    parallel = true;
+                    break;
+                case "--replay":
+                    replay = new ReplayInput( InputRecording.read( Paths.get( argument( args, ++i ) ) ) );
+                    levelPath = replay.getRecording().getLevelPath();
+                    break;
+                default:
+                    levelPath = args[i];
             }
         }
         
+        new Main();
+        
     }
     
-    private void processMap( String map ) {
-
-        blocks = new ArrayList<>();
-        coins = new ArrayList<>();
-        enemies = new ArrayList<>();
-
-        int line = 0;
-        int column = 0;
-        int maxColumn = 0;
-
-        for ( String mapLine : map.split( "\n" ) ) {
-            
-            for ( char c : mapLine.toCharArray() ) {
-                switch ( c ) {
-                    case 'A':
-                    case 'B':
-                    case 'C':
-                    case 'D':
-                    case 'E':
-                    case 'F':
-                    case 'G':
-                    case 'H':
-                    case 'I':
-                        blocks.add( new Block(
-                            new Rectangle( 
-                                column * SPRITE_WIDTH,
-                                line * SPRITE_WIDTH,
-                                SPRITE_WIDTH,
-                                SPRITE_WIDTH
-                            ),
-                            null,
-                            tileImages.get( c )
-                        ));
-                        break;
-                    case 'o':
-                        coins.add( new Coin( 
-                            new Rectangle(
-                                column * SPRITE_WIDTH,
-                                line * SPRITE_WIDTH,
-                                24, 32
-                            ),
-                            baseCoinAnimation.copy(),
-                            coinSound
-                        ));
-                        break;
-                    case 'e':
-                        enemies.add( new Enemy( 
-                            new Rectangle(
-                                column * SPRITE_WIDTH,
-                                line * SPRITE_WIDTH,
-                                SPRITE_WIDTH,
-                                SPRITE_WIDTH
-                            ),
-                            150, RED,
-                            enemyWalkRight.copy(),
-                            enemyWalkLeft.copy(),
-                            kickSound
-                        ));
-                        break;
-                    case 'P':
-                        player.rect.x = column * SPRITE_WIDTH;
-                        player.rect.y = line * SPRITE_WIDTH;
-                        break;
-                }
-                
-                column++;
-                
-                if ( maxColumn < column ) {
-                    maxColumn = column;
-                }
-                
-            }
-            
-            line++;
-            column = 0;
-            
+    /**
+     * Returns the value of the option before position i, or stops with the
+     * usage if it is missing.
+     */
+    private static String argument( String[] args, int i ) {
+        if ( i >= args.length ) {
+            usage( args[i - 1] + " needs a value" );
         }
-        
-        worldWidth = maxColumn * SPRITE_WIDTH;
-        worldHeight = line * SPRITE_WIDTH;
-
+        return args[i];
     }
     
-    private void updateCamera() {
-        
-        if ( player.rect.x <= getScreenWidth() / 2 ) {
-            camera.target.x = getScreenWidth() / 2;
-        } else if ( player.rect.x >= worldWidth - getScreenWidth() / 2 ) {
-            camera.target.x = worldWidth - getScreenWidth() / 2 ;
-        } else {
-            camera.target.x = player.rect.x;
+    /**
+     * Parses the --tick-rate value, which must be a finite, positive number
+     * of steps per second.
+     */
+    private static double parseTickRate( String value ) {
+        double rate = Double.NaN;
+        try {
+            rate = Double.parseDouble( value );
+        } catch ( NumberFormatException exc ) {
         }
-        
-        if ( player.rect.y <= getScreenHeight() / 2 ) {
-            camera.target.y = getScreenHeight() / 2;
-        } else if ( player.rect.y >= worldHeight - getScreenHeight() / 2 ) {
-            camera.target.y = worldHeight - getScreenHeight() / 2 ;
-        } else {
-            camera.target.y = player.rect.y;
+        if ( !Double.isFinite( rate ) || rate <= 0 ) {
+            usage( "invalid tick rate: " + value );
         }
-        
+        return rate;
     }
     
-    public static void main( String[] args ) {
-        new Main();
+    private static void usage( String error ) {
+        System.err.println( error );
+        System.err.println( "usage: Main [level] [--record file | --replay file] [--tick-rate steps per second] [--parallel]" );
+        System.exit( 1 );
     }
 
 }
@@ -0,0 +1,751 @@
+package jsgeplatformer;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * Tocador de músicas em streaming, em laço e com transição suave entre
+ * faixas.
+ *
+ * Cada faixa é decodificada (MP3, OGG, WAV...) em uma thread própria,
+ * adiantada em relação ao que está tocando, para um buffer circular de
+ * tamanho fixo; a memória usada não depende da duração da música. Ao
+ * chegar ao fim do arquivo, a thread reabre a faixa e continua escrevendo
+ * no mesmo buffer, então a volta ao começo não trava o jogo.
+ *
+ * A volta só é emendada amostra a amostra quando o arquivo não traz
+ * silêncio a mais. Formatos PCM, como WAV, não trazem. Um MP3 começa com
+ * o atraso do codificador e do decodificador e termina com o enchimento
+ * do último quadro; esses trechos são descartados quando o cabeçalho
+ * LAME/Info informa seus tamanhos (LAME 3.90 em diante, ffmpeg). Sem
+ * essa informação (o MP3 da fase foi gerado pelo LAME 3.88), a primeira
+ * volta mede onde começa e termina o som e descarta o silêncio digital
+ * (amostras zeradas) das pontas, nela e nas voltas seguintes.
+ * A thread de saída lê os buffers em blocos, mistura a faixa atual com a
+ * que está saindo durante uma transição e escreve em uma SourceDataLine.
+ *
+ * Se o buffer da faixa atual estiver vazio quando a saída precisar de um
+ * bloco, o que faltar é tocado como silêncio e contado como underrun.
+ * Sem dispositivo de áudio, o tocador segue consumindo os buffers em
+ * silêncio, no mesmo ritmo.
+ *
+ * @author Prof. Dr. David Buzatto
+ */
+public class MusicPlayer {
+
+    // quadros (amostras estéreo) por bloco de saída, cerca de 23 ms
+    private static final int BLOCK_FRAMES = 1024;
+
+    // atraso do banco de filtros de um decodificador de MP3, em amostras
+    private static final int MP3_DECODER_DELAY = 529;
+
+    private int bufferFrames;
+    private int primeFrames;
+
+    // pedido de troca de faixa, feito por qualquer thread e atendido pela de saída
+    private AtomicReference<Track> pending = new AtomicReference<>();
+
+    // usados apenas pela thread de saída
+    private Track current;
+    private Track fading;
+    private int fadeFrames;
+    private int fadePosition;
+
+    private float[] mix = new float[BLOCK_FRAMES * 2];
+    private byte[] block = new byte[BLOCK_FRAMES * 4];
+
+    private SourceDataLine line;
+    private Thread thread;
+    private volatile boolean running;
+    private volatile float volume = 1;
+
+    private volatile Track playing;
+    private volatile Exception error;
+    private volatile long underruns;
+    private volatile long underrunFrames;
+
+    /**
+     * @param bufferSeconds Quanto de cada faixa é decodificado adiantado.
+     * @param primeSeconds Quanto precisa estar decodificado para uma faixa
+     * começar a tocar.
+     */
+    public MusicPlayer( double bufferSeconds, double primeSeconds ) {
+        int frames = (int) ( bufferSeconds * SoundEffects.SAMPLE_RATE );
+        bufferFrames = Integer.highestOneBit( Math.max( frames, BLOCK_FRAMES * 2 ) - 1 ) * 2;
+        primeFrames = Math.min( (int) ( primeSeconds * SoundEffects.SAMPLE_RATE ), bufferFrames );
+    }
+
+    /**
+     * Dois segundos de buffer por faixa (cerca de 350 KB), tocando depois
+     * de um quarto de segundo decodificado.
+     */
+    public MusicPlayer() {
+        this( 2, 0.25 );
+    }
+
+    /**
+     * Abre a saída de áudio e inicia a thread de saída.
+     *
+     * @return false se não houver saída de áudio; o tocador fica mudo.
+     */
+    public boolean start() {
+
+        if ( running ) {
+            return line != null;
+        }
+
+        try {
+            line = AudioSystem.getSourceDataLine( SoundEffects.FORMAT );
+            line.open( SoundEffects.FORMAT, BLOCK_FRAMES * 4 * 4 );
+            line.start();
+        } catch ( LineUnavailableException | IllegalArgumentException | SecurityException exc ) {
+            line = null;
+        }
+
+        running = true;
+        thread = new Thread( this::run, "music" );
+        thread.setDaemon( true );
+        thread.setPriority( Thread.MAX_PRIORITY );
+        thread.start();
+
+        return line != null;
+
+    }
+
+    /**
+     * Para as threads de saída e de decodificação e fecha a saída.
+     */
+    public void shutdown() {
+
+        running = false;
+
+        if ( thread != null ) {
+            thread.interrupt();
+            try {
+                thread.join( 1000 );
+            } catch ( InterruptedException exc ) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        Track request = pending.getAndSet( null );
+        for ( Track track : new Track[]{ request, current, fading } ) {
+            if ( track != null ) {
+                track.stop();
+            }
+        }
+
+        if ( line != null ) {
+            line.close();
+        }
+
+    }
+
+    /**
+     * Toca uma faixa em laço, no lugar da atual. A decodificação começa
+     * imediatamente, em segundo plano.
+     *
+     * @param fadeSeconds Duração da transição da faixa atual para a nova;
+     * zero troca de uma vez.
+     */
+    public void play( String filePath, double fadeSeconds ) {
+        request( new Track( filePath, true ), fadeSeconds );
+    }
+
+    /**
+     * Toca uma faixa uma única vez.
+     */
+    public void playOnce( String filePath, double fadeSeconds ) {
+        request( new Track( filePath, false ), fadeSeconds );
+    }
+
+    /**
+     * Silencia a música, diminuindo o volume da faixa atual até zero.
+     */
+    public void stop( double fadeSeconds ) {
+        request( new Track( null, false ), fadeSeconds );
+    }
+
+    private void request( Track track, double fadeSeconds ) {
+
+        track.fadeFrames = (int) Math.max( 0, fadeSeconds * SoundEffects.SAMPLE_RATE );
+        track.start();
+
+        // um pedido ainda não atendido é substituído pelo novo
+        Track previous = pending.getAndSet( track );
+        if ( previous != null ) {
+            previous.stop();
+        }
+
+    }
+
+    private void run() {
+
+        long blockNanos = (long) ( BLOCK_FRAMES / SoundEffects.SAMPLE_RATE * 1e9 );
+
+        while ( running ) {
+
+            mixBlock();
+
+            if ( line != null ) {
+                // bloqueia até haver espaço na saída, o que dá o ritmo da leitura
+                line.write( block, 0, block.length );
+            } else {
+                LockSupport.parkNanos( blockNanos );
+                if ( Thread.interrupted() ) {
+                    return;
+                }
+            }
+
+        }
+
+    }
+
+    /**
+     * Atende um pedido de troca de faixa pendente e mistura o próximo bloco.
+     */
+    void mixBlock() {
+
+        Track request = pending.getAndSet( null );
+        if ( request != null ) {
+            switchTo( request );
+        }
+
+        Arrays.fill( mix, 0 );
+
+        if ( fading != null ) {
+
+            // a transição só anda quando a faixa nova já pode tocar
+            boolean advance = current == null || current.primed || current.isReady( primeFrames );
+            float from = (float) fadePosition / fadeFrames;
+            float to = advance ? (float) ( fadePosition + BLOCK_FRAMES ) / fadeFrames : from;
+
+            mixTrack( fading, 1 - from, 1 - to, false );
+            if ( current != null ) {
+                mixTrack( current, from, to, true );
+            }
+
+            if ( advance ) {
+                fadePosition += BLOCK_FRAMES;
+            }
+            if ( fadePosition >= fadeFrames ) {
+                fading.stop();
+                fading = null;
+            }
+
+        } else if ( current != null ) {
+            mixTrack( current, 1, 1, true );
+        }
+
+        if ( current != null && current.isDone() ) {
+            if ( current.error != null ) {
+                error = current.error;
+            }
+            current.stop();
+            current = null;
+            playing = null;
+        }
+
+        float gain = volume * Short.MAX_VALUE;
+        for ( int i = 0; i < mix.length; i++ ) {
+            int value = (int) Math.max( Short.MIN_VALUE, Math.min( Short.MAX_VALUE, mix[i] * gain ) );
+            block[i * 2] = (byte) value;
+            block[i * 2 + 1] = (byte) ( value >> 8 );
+        }
+
+    }
+
+    private void switchTo( Track track ) {
+
+        if ( fading != null ) {
+            fading.stop();
+            fading = null;
+        }
+
+        if ( current != null && track.fadeFrames > 0 ) {
+            fading = current;
+            fadeFrames = track.fadeFrames;
+            fadePosition = 0;
+        } else if ( current != null ) {
+            current.stop();
+        }
+
+        if ( track.path == null ) {
+            track.stop();
+            current = null;
+        } else {
+            current = track;
+        }
+        playing = current;
+
+    }
+
+    /**
+     * Soma até um bloco da faixa ao mix, com o ganho variando linearmente
+     * de gainFrom a gainTo ao longo do bloco.
+     */
+    private void mixTrack( Track track, float gainFrom, float gainTo, boolean countUnderruns ) {
+
+        if ( !track.primed ) {
+            if ( !track.isReady( primeFrames ) ) {
+                return;
+            }
+            track.primed = true;
+        }
+
+        long read = track.read;
+        int frames = (int) Math.min( BLOCK_FRAMES, track.written - read );
+
+        if ( frames < BLOCK_FRAMES && !track.finished && countUnderruns ) {
+            underruns++;
+            underrunFrames += BLOCK_FRAMES - frames;
+        }
+
+        short[] ring = track.ring;
+        int mask = bufferFrames - 1;
+        float step = ( gainTo - gainFrom ) / BLOCK_FRAMES;
+
+        for ( int f = 0; f < frames; f++ ) {
+            float g = Math.max( 0, Math.min( 1, gainFrom + step * f ) ) / Short.MAX_VALUE;
+            int s = (int) ( ( read + f ) & mask ) * 2;
+            mix[f * 2] += ring[s] * g;
+            mix[f * 2 + 1] += ring[s + 1] * g;
+        }
+
+        track.read = read + frames;
+
+    }
+
+    public float getVolume() {
+        return volume;
+    }
+
+    public void setVolume( float volume ) {
+        this.volume = volume;
+    }
+
+    /**
+     * O arquivo da faixa que está tocando, ou null.
+     */
+    public String getTrack() {
+        Track track = playing;
+        return track == null ? null : track.path;
+    }
+
+    /**
+     * Quantas vezes a faixa atual já voltou ao começo.
+     */
+    public int getLoopCount() {
+        Track track = playing;
+        return track == null ? 0 : track.loops;
+    }
+
+    /**
+     * Quadros já decodificados da faixa atual e ainda não tocados.
+     */
+    public int getBufferedFrames() {
+        Track track = playing;
+        return track == null ? 0 : (int) ( track.written - track.read );
+    }
+
+    public int getBufferFrames() {
+        return bufferFrames;
+    }
+
+    /**
+     * Blocos de saída em que a decodificação não acompanhou a reprodução.
+     */
+    public long getUnderruns() {
+        return underruns;
+    }
+
+    /**
+     * Quadros tocados como silêncio por falta de dados decodificados.
+     */
+    public long getUnderrunFrames() {
+        return underrunFrames;
+    }
+
+    /**
+     * O último erro que interrompeu a decodificação de uma faixa, ou null.
+     */
+    public Exception getError() {
+        return error;
+    }
+
+    /**
+     * Se há uma saída de áudio aberta (o tocador pode estar mudo).
+     */
+    public boolean isAudible() {
+        return line != null;
+    }
+
+    /**
+     * Uma faixa e o buffer circular em que a sua thread a decodifica. A
+     * thread de decodificação só avança written e a de saída só avança
+     * read, então o buffer dispensa travas.
+     */
+    private class Track {
+
+        private final String path;
+        private final boolean loop;
+        private int fadeFrames;
+
+        private final short[] ring;
+        private volatile long written;
+        private volatile long read;
+        private volatile boolean finished;
+        private volatile boolean stopped;
+        private volatile int loops;
+        private volatile Exception error;
+        private boolean primed;
+
+        private Thread decoder;
+
+        Track( String path, boolean loop ) {
+            this.path = path;
+            this.loop = loop;
+            this.ring = path == null ? new short[0] : new short[bufferFrames * 2];
+        }
+
+        void start() {
+            if ( path == null ) {
+                finished = true;
+                return;
+            }
+            decoder = new Thread( this::decode, "music-decoder" );
+            decoder.setDaemon( true );
+            decoder.start();
+        }
+
+        void stop() {
+            stopped = true;
+            if ( decoder != null ) {
+                LockSupport.unpark( decoder );
+            }
+        }
+
+        boolean isReady( int frames ) {
+            return finished || written - read >= frames;
+        }
+
+        boolean isDone() {
+            return finished && read == written;
+        }
+
+        private void decode() {
+
+            byte[] bytes = new byte[BLOCK_FRAMES * 4];
+
+            try {
+
+                // trecho com som de cada volta, [start, end) em quadros da saída
+                long[] trim = readMp3Trim( path );
+                long start = trim == null ? 0 : trim[0];
+                long end = trim == null ? Long.MAX_VALUE : trim[0] + trim[1];
+
+                // MP3 sem atraso e enchimento no cabeçalho: mede o silêncio na primeira volta
+                boolean measure = trim == null && path.toLowerCase().endsWith( ".mp3" );
+
+                while ( !stopped ) {
+
+                    /*
+                     * O arquivo é reaberto a cada volta e as amostras seguem
+                     * no mesmo buffer, emendadas às do fim da volta anterior.
+                     */
+                    try ( AudioInputStream in = open( path ) ) {
+
+                        long decoded = 0;
+                        long sound = -1;
+                        long silence = 0;
+                        int count;
+                        while ( !stopped && decoded < end && ( count = in.read( bytes ) ) > 0 ) {
+
+                            int frames = count / 4;
+
+                            if ( measure ) {
+
+                                /*
+                                 * O silêncio antes do primeiro som é
+                                 * descartado; o que vem depois de um som só
+                                 * é escrito quando aparece outro, então o
+                                 * do fim do arquivo nunca é.
+                                 */
+                                int first = firstSound( bytes, frames );
+                                if ( first < 0 ) {
+                                    if ( sound >= 0 ) {
+                                        silence += frames;
+                                    }
+                                } else {
+                                    int last = lastSound( bytes, frames );
+                                    if ( sound < 0 ) {
+                                        start = decoded + first;
+                                    } else {
+                                        first = 0;
+                                        putSilence( silence );
+                                    }
+                                    put( bytes, first, last + 1 );
+                                    sound = decoded + last + 1;
+                                    silence = frames - last - 1;
+                                }
+                                decoded += frames;
+
+                            } else {
+
+                                int from = (int) Math.max( 0, Math.min( frames, start - decoded ) );
+                                int to = (int) Math.max( from, Math.min( frames, end - decoded ) );
+                                decoded += frames;
+                                put( bytes, from, to );
+
+                            }
+
+                        }
+
+                        if ( measure && !stopped ) {
+                            measure = false;
+                            if ( sound >= 0 ) {
+                                end = sound;
+                            }
+                        }
+
+                    }
+
+                    if ( !loop || stopped ) {
+                        break;
+                    }
+                    loops++;
+
+                }
+
+            } catch ( IOException | UnsupportedAudioFileException | IllegalArgumentException exc ) {
+                error = exc;
+            } finally {
+                finished = true;
+            }
+
+        }
+
+        /**
+         * Copia os quadros [from, to) de bytes para o buffer, esperando
+         * espaço.
+         */
+        private void put( byte[] bytes, int from, int to ) {
+
+            int kept = to - from;
+            int mask = bufferFrames - 1;
+
+            while ( !stopped && bufferFrames - ( written - read ) < kept ) {
+                LockSupport.parkNanos( 5_000_000 );
+            }
+
+            long position = written;
+            for ( int f = 0; f < kept; f++ ) {
+                int s = (int) ( ( position + f ) & mask ) * 2;
+                int b = ( from + f ) * 4;
+                ring[s] = (short) ( ( bytes[b] & 0xFF ) | ( bytes[b + 1] << 8 ) );
+                ring[s + 1] = (short) ( ( bytes[b + 2] & 0xFF ) | ( bytes[b + 3] << 8 ) );
+            }
+            written = position + kept;
+
+        }
+
+        /**
+         * Escreve quadros de silêncio no buffer, um bloco por vez.
+         */
+        private void putSilence( long frames ) {
+
+            int mask = bufferFrames - 1;
+
+            while ( frames > 0 && !stopped ) {
+
+                int kept = (int) Math.min( frames, BLOCK_FRAMES );
+                while ( !stopped && bufferFrames - ( written - read ) < kept ) {
+                    LockSupport.parkNanos( 5_000_000 );
+                }
+
+                long position = written;
+                for ( int f = 0; f < kept; f++ ) {
+                    int s = (int) ( ( position + f ) & mask ) * 2;
+                    ring[s] = 0;
+                    ring[s + 1] = 0;
+                }
+                written = position + kept;
+                frames -= kept;
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Lê do cabeçalho LAME/Info de um MP3 o atraso do codificador e o
+     * enchimento do fim.
+     *
+     * @return Quantos quadros descartar no começo e quantos tocar depois
+     * deles, na taxa da saída, ou null se o arquivo não for um MP3 com
+     * essa informação.
+     */
+    static long[] readMp3Trim( String filePath ) throws IOException {
+
+        byte[] frame = new byte[512];
+        int length;
+
+        try ( InputStream in = new BufferedInputStream( Files.newInputStream( Paths.get( filePath ) ) ) ) {
+
+            length = in.readNBytes( frame, 0, 10 );
+
+            // pula a tag ID3v2 (tamanho em inteiro "syncsafe", com rodapé opcional)
+            if ( length == 10 && frame[0] == 'I' && frame[1] == 'D' && frame[2] == '3' ) {
+                long size = ( frame[6] & 0x7F ) << 21 | ( frame[7] & 0x7F ) << 14 | ( frame[8] & 0x7F ) << 7 | ( frame[9] & 0x7F );
+                if ( ( frame[5] & 0x10 ) != 0 ) {
+                    size += 10;
+                }
+                in.skipNBytes( size );
+                length = 0;
+            }
+
+            length += in.readNBytes( frame, length, frame.length - length );
+
+        } catch ( EOFException exc ) {
+            return null;
+        }
+
+        // cabeçalho do primeiro quadro: MPEG 1, 2 ou 2.5, camada III
+        if ( length < 4 || ( frame[0] & 0xFF ) != 0xFF || ( frame[1] & 0xE0 ) != 0xE0 ) {
+            return null;
+        }
+        int version = frame[1] >> 3 & 3;
+        int layer = frame[1] >> 1 & 3;
+        int rateIndex = frame[2] >> 2 & 3;
+        if ( version == 1 || layer != 1 || rateIndex == 3 ) {
+            return null;
+        }
+        boolean mpeg1 = version == 3;
+        int sampleRate = new int[]{ 44100, 48000, 32000 }[rateIndex] >> ( mpeg1 ? 0 : version == 2 ? 1 : 2 );
+        boolean mono = ( frame[3] >> 6 & 3 ) == 3;
+
+        // o quadro Xing/Info vem depois das informações laterais
+        int p = 4 + ( mpeg1 ? ( mono ? 17 : 32 ) : ( mono ? 9 : 17 ) );
+        if ( p + 12 > length ) {
+            return null;
+        }
+        String tag = new String( frame, p, 4, StandardCharsets.ISO_8859_1 );
+        int flags = readInt( frame, p + 4 );
+        if ( !( tag.equals( "Xing" ) || tag.equals( "Info" ) ) || ( flags & 1 ) == 0 ) {
+            return null;
+        }
+        long frames = readInt( frame, p + 8 ) & 0xFFFFFFFFL;
+        p += 12;
+        if ( ( flags & 2 ) != 0 ) {
+            p += 4;
+        }
+        if ( ( flags & 4 ) != 0 ) {
+            p += 100;
+        }
+        if ( ( flags & 8 ) != 0 ) {
+            p += 4;
+        }
+
+        // extensão LAME: atraso e enchimento em 12 bits cada, a partir do byte 21
+        if ( p + 24 > length ) {
+            return null;
+        }
+        String encoder = new String( frame, p, 4, StandardCharsets.ISO_8859_1 );
+        if ( !( encoder.equals( "LAME" ) || encoder.equals( "Lavc" ) || encoder.equals( "Lavf" ) ) ) {
+            return null;
+        }
+        int delay = ( frame[p + 21] & 0xFF ) << 4 | ( frame[p + 22] & 0xFF ) >> 4;
+        int padding = ( frame[p + 22] & 0x0F ) << 8 | ( frame[p + 23] & 0xFF );
+        if ( delay == 0 && padding == 0 ) {
+            return null;
+        }
+
+        long total = frames * ( mpeg1 ? 1152 : 576 );
+        long skip = delay + MP3_DECODER_DELAY;
+        long keep = Math.min( total - delay - padding, total - skip );
+        if ( keep <= 0 ) {
+            return null;
+        }
+
+        double scale = SoundEffects.SAMPLE_RATE / sampleRate;
+        return new long[]{ Math.round( skip * scale ), Math.round( keep * scale ) };
+
+    }
+
+    /**
+     * O primeiro dos quadros de 16 bits estéreo em bytes que não é silêncio
+     * digital, ou -1.
+     */
+    private static int firstSound( byte[] bytes, int frames ) {
+        for ( int f = 0; f < frames; f++ ) {
+            if ( isSound( bytes, f ) ) {
+                return f;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * O último dos quadros de 16 bits estéreo em bytes que não é silêncio
+     * digital, ou -1.
+     */
+    private static int lastSound( byte[] bytes, int frames ) {
+        for ( int f = frames - 1; f >= 0; f-- ) {
+            if ( isSound( bytes, f ) ) {
+                return f;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isSound( byte[] bytes, int f ) {
+        int b = f * 4;
+        return ( bytes[b] | bytes[b + 1] | bytes[b + 2] | bytes[b + 3] ) != 0;
+    }
+
+    private static int readInt( byte[] bytes, int p ) {
+        return ( bytes[p] & 0xFF ) << 24 | ( bytes[p + 1] & 0xFF ) << 16 | ( bytes[p + 2] & 0xFF ) << 8 | ( bytes[p + 3] & 0xFF );
+    }
+
+    /**
+     * Abre um arquivo de áudio já convertido para o formato da saída.
+     */
+    private static AudioInputStream open( String filePath ) throws IOException, UnsupportedAudioFileException {
+
+        InputStream file = new BufferedInputStream( Files.newInputStream( Paths.get( filePath ) ) );
+
+        try {
+
+            AudioInputStream source = AudioSystem.getAudioInputStream( file );
+            AudioFormat sourceFormat = source.getFormat();
+            AudioFormat pcmFormat = new AudioFormat( sourceFormat.getSampleRate(), 16, sourceFormat.getChannels(), true, false );
+            AudioInputStream pcm = AudioSystem.getAudioInputStream( pcmFormat, source );
+
+            if ( pcmFormat.matches( SoundEffects.FORMAT ) ) {
+                return pcm;
+            }
+            return AudioSystem.getAudioInputStream( SoundEffects.FORMAT, pcm );
+
+        } catch ( IOException | UnsupportedAudioFileException | IllegalArgumentException exc ) {
+            file.close();
+            throw exc;
+        }
+
+    }
+
+}
@@ -0,0 +1,156 @@
+package jsgeplatformer;
+
+import br.com.davidbuzatto.jsge.geom.Rectangle;
+import br.com.davidbuzatto.jsge.image.Image;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fundo composto por camadas que se repetem na horizontal e rolam com
+ * velocidades diferentes da câmera (parallax).
+ *
+ * Cada camada é preparada uma única vez: a imagem é repetida em uma faixa
+ * pelo menos tão larga quanto a área visível, já pintada sobre a cor de
+ * fundo dela. Assim a cor não é aplicada a cada desenho e qualquer trecho
+ * visível da camada é coberto por no máximo duas cópias da faixa, seja
+ * qual for a largura da fase. Camadas fora da área visível não são
+ * desenhadas.
+ *
+ * @author Prof. Dr. David Buzatto
+ */
+public class ParallaxBackground {
+
+    private double viewWidth;
+    private List<Layer> layers = new ArrayList<>();
+    private Rectangle source = new Rectangle();
+    private int blitCount;
+
+    /**
+     * @param viewWidth Largura máxima da área visível, em coordenadas do
+     * mundo; se a área visível for mais larga, as camadas ainda são
+     * desenhadas corretamente, mas com mais cópias.
+     */
+    public ParallaxBackground( double viewWidth ) {
+        this.viewWidth = viewWidth;
+    }
+
+    /**
+     * Acrescenta uma camada, desenhada depois (na frente) das anteriores.
+     *
+     * @param tint Cor de fundo das partes transparentes da imagem, ou null.
+     * @param y Posição vertical da camada quando a câmera está no topo
+     * do mundo.
+     * @param scrollX Quanto a camada acompanha a câmera na horizontal: 1
+     * fica presa ao mundo, 0 fica parada na tela e valores intermediários
+     * parecem mais distantes.
+     * @param scrollY O mesmo, na vertical.
+     * @param width Largura coberta pelas repetições da camada, ou
+     * Double.POSITIVE_INFINITY para repetir sem fim.
+     */
+    public void addLayer( Image image, Color tint, double y, double scrollX, double scrollY, double width ) {
+        layers.add( new Layer( bake( image, tint ), y, scrollX, scrollY, width ) );
+    }
+
+    /**
+     * Desenha as camadas que intersectam a área visível (em coordenadas do
+     * mundo, dentro do modo 2D da câmera).
+     */
+    public void draw( DrawTarget e, double x, double y, double width, double height ) {
+
+        blitCount = 0;
+
+        for ( int i = 0; i < layers.size(); i++ ) {
+
+            Layer layer = layers.get( i );
+            Image strip = layer.strip;
+            int stripWidth = strip.getWidth();
+
+            // origem da camada no mundo, deslocada pela parte da câmera que ela não acompanha
+            double originX = x * ( 1 - layer.scrollX );
+            double originY = layer.y + y * ( 1 - layer.scrollY );
+
+            if ( originY >= y + height || originY + strip.getHeight() <= y ) {
+                continue;
+            }
+
+            // trecho visível, em coordenadas da camada
+            double start = Math.max( x - originX, 0 );
+            double end = Math.min( x + width - originX, layer.width );
+            if ( start >= end ) {
+                continue;
+            }
+
+            int first = (int) Math.floor( start / stripWidth );
+            int last = (int) Math.ceil( end / stripWidth ) - 1;
+
+            for ( int k = first; k <= last; k++ ) {
+                double stripX = (double) k * stripWidth;
+                source.width = Math.min( stripWidth, layer.width - stripX );
+                source.height = strip.getHeight();
+                e.drawImage( strip, source, originX + stripX, originY );
+                blitCount++;
+            }
+
+        }
+
+    }
+
+    /**
+     * Quantas cópias de faixa foram desenhadas no último draw.
+     */
+    public int getBlitCount() {
+        return blitCount;
+    }
+
+    public int getLayerCount() {
+        return layers.size();
+    }
+
+    /**
+     * Repete a imagem até cobrir a largura visível, sobre a cor de fundo.
+     * Com uma cor opaca, a faixa não tem transparência, o que a deixa mais
+     * barata de desenhar.
+     */
+    private Image bake( Image image, Color tint ) {
+
+        int imageWidth = image.getWidth();
+        int copies = Math.max( 1, (int) Math.ceil( viewWidth / imageWidth ) );
+        boolean opaque = tint != null && tint.getAlpha() == 255;
+
+        BufferedImage strip = new BufferedImage(
+            imageWidth * copies, image.getHeight(),
+            opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB
+        );
+
+        Graphics2D g2d = strip.createGraphics();
+        for ( int k = 0; k < copies; k++ ) {
+            g2d.drawImage( image.buffImage, k * imageWidth, 0, tint, null );
+        }
+        g2d.dispose();
+
+        return new Image( strip );
+
+    }
+
+    private static class Layer {
+
+        Image strip;
+        double y;
+        double scrollX;
+        double scrollY;
+        double width;
+
+        Layer( Image strip, double y, double scrollX, double scrollY, double width ) {
+            this.strip = strip;
+            this.y = y;
+            this.scrollX = scrollX;
+            this.scrollY = scrollY;
+            this.width = width;
+        }
+
+    }
+
+}
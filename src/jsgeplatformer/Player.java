@@ -2,11 +2,8 @@ package jsgeplatformer;
 
 import br.com.davidbuzatto.jsge.core.engine.EngineFrame;
 import br.com.davidbuzatto.jsge.geom.Rectangle;
-import br.com.davidbuzatto.jsge.image.Image;
-import br.com.davidbuzatto.jsge.image.ImageUtils;
 import br.com.davidbuzatto.jsge.math.CollisionUtils;
 import br.com.davidbuzatto.jsge.math.Vector2;
-import br.com.davidbuzatto.jsge.sound.Sound;
 import java.awt.Color;
 
 /**
@@ -41,6 +38,7 @@ public class Player {
     public Rectangle rect;
     public Vector2 vel;
     private Vector2 prevPos;
+    private Vector2 lastPos;
     
     public double walkSpeed;
     public double runSpeed;
@@ -53,16 +51,20 @@ public class Player {
     private boolean running;
     private boolean idle;
     
+    private boolean leftDown;
+    private boolean rightDown;
+    private boolean jumpRequested;
+    
     private Animation walkRightAnimation;
     private Animation walkLeftAnimation;
-    private Image jumpRightImage;
-    private Image jumpLeftImage;
-    private Image jumpRunningRightImage;
-    private Image jumpRunningLeftImage;
-    private Image fallingRightImage;
-    private Image fallingLeftImage;
+    private Sprite jumpRightSprite;
+    private Sprite jumpLeftSprite;
+    private Sprite jumpRunningRightSprite;
+    private Sprite jumpRunningLeftSprite;
+    private Sprite fallingRightSprite;
+    private Sprite fallingLeftSprite;
     
-    private Sound jumpSound;
+    private SoundEffect jumpSound;
     
     private Rectangle cpLeft;
     private Rectangle cpRight;
@@ -70,12 +72,15 @@ public class Player {
     private Rectangle cpDown;
     
     public Player( Rectangle rect, double walkSpeed, double runSpeed, 
-                   double jumpSpeed, Sound jumpSound, Color color, 
+                   double jumpSpeed, SoundEffect jumpSound, Color color, 
                    Animation walkRightAnimation, Animation walkLeftAnimation,
-                   Image jumpRightImage, Image jumpRunningRightImage, Image fallingRightImage ) {
+                   Sprite jumpRightSprite, Sprite jumpLeftSprite, 
+                   Sprite jumpRunningRightSprite, Sprite jumpRunningLeftSprite, 
+                   Sprite fallingRightSprite, Sprite fallingLeftSprite ) {
         
         this.rect = rect;
         this.prevPos = new Vector2();
+        this.lastPos = new Vector2( rect.x, rect.y );
         this.vel = new Vector2();
         
         this.walkSpeed = walkSpeed;
@@ -93,12 +98,12 @@ public class Player {
         
         this.walkRightAnimation = walkRightAnimation;
         this.walkLeftAnimation = walkLeftAnimation;
-        this.jumpRightImage = jumpRightImage;
-        this.jumpLeftImage = ImageUtils.imageFlipHorizontal( jumpRightImage );
-        this.jumpRunningRightImage = jumpRunningRightImage;
-        this.jumpRunningLeftImage = ImageUtils.imageFlipHorizontal( jumpRunningRightImage );
-        this.fallingRightImage = fallingRightImage;
-        this.fallingLeftImage = ImageUtils.imageFlipHorizontal( fallingRightImage );
+        this.jumpRightSprite = jumpRightSprite;
+        this.jumpLeftSprite = jumpLeftSprite;
+        this.jumpRunningRightSprite = jumpRunningRightSprite;
+        this.jumpRunningLeftSprite = jumpRunningLeftSprite;
+        this.fallingRightSprite = fallingRightSprite;
+        this.fallingLeftSprite = fallingLeftSprite;
         
         this.cpLeft = new Rectangle( 0, 0, 6, 20 );
         this.cpRight = new Rectangle( 0, 0, 6, 20 );
@@ -107,19 +112,31 @@ public class Player {
         
     }
     
-    public void update( double delta, EngineFrame e ) {
+    /**
+     * Lê o estado das teclas. Deve ser chamado uma vez por frame, pois
+     * o pulo fica guardado até ser consumido pelo próximo passo de
+     * simulação.
+     */
+    public void readInput( InputSource input ) {
+        running = input.isKeyDown( EngineFrame.KEY_CONTROL );
+        leftDown = input.isKeyDown( EngineFrame.KEY_LEFT );
+        rightDown = input.isKeyDown( EngineFrame.KEY_RIGHT );
+        if ( input.isKeyPressed( EngineFrame.KEY_SPACE ) ) {
+            jumpRequested = true;
+        }
+    }
+    
+    public void update( double delta ) {
         
         double speed;
         
-        if ( e.isKeyDown( EngineFrame.KEY_CONTROL ) ) {
+        if ( running ) {
             speed = runSpeed;
-            running = true;
         } else {
             speed = walkSpeed;
-            running = false;
         }
         
-        if ( e.isKeyDown( EngineFrame.KEY_LEFT ) ) {
+        if ( leftDown ) {
             vel.x = -speed;
             idle = false;
             direction = Direction.LEFT;
@@ -129,7 +146,7 @@ public class Player {
             } else {
                 walkLeftAnimation.update( delta );
             }
-        } else if ( e.isKeyDown( EngineFrame.KEY_RIGHT ) ) {
+        } else if ( rightDown ) {
             vel.x = speed;
             idle = false;
             direction = Direction.RIGHT;
@@ -144,17 +161,18 @@ public class Player {
             idle = true;
         }
         
-        if ( e.isKeyPressed( EngineFrame.KEY_SPACE ) && jumps < MAX_JUMPS ) {
+        if ( jumpRequested && jumps < MAX_JUMPS ) {
             jump( false );
         }
+        jumpRequested = false;
         
         rect.x += vel.x * delta;
         rect.y += vel.y * delta;
         
-        vel.y += Main.GRAVITY;
+        vel.y += World.GRAVITY * delta;
         
-        if ( vel.y >= Main.MAX_FALL_SPEED ) {
-            vel.y = Main.MAX_FALL_SPEED;
+        if ( vel.y >= World.MAX_FALL_SPEED ) {
+            vel.y = World.MAX_FALL_SPEED;
         }
         
         if ( state != State.ON_GROUND ) {
@@ -172,48 +190,110 @@ public class Player {
         
     }
     
-    public void draw( EngineFrame e ) {
+    /**
+     * Coloca o jogador em (x, y) no estado inicial, ao (re)carregar uma fase.
+     */
+    public void reset( double x, double y ) {
+        
+        rect.x = x;
+        rect.y = y;
+        prevPos.x = x;
+        prevPos.y = y;
+        vel.x = 0;
+        vel.y = 0;
+        
+        state = State.FALLING;
+        direction = Direction.RIGHT;
+        running = false;
+        idle = true;
+        jumps = 0;
+        jumpRequested = false;
         
-        Image currentImage;
+        saveState();
+        
+    }
+    
+    /**
+     * Guarda a posição do início do passo de simulação, usada na interpolação.
+     */
+    public void saveState() {
+        lastPos.x = rect.x;
+        lastPos.y = rect.y;
+    }
+    
+    /**
+     * Posição no início do passo de simulação (a guardada por saveState).
+     */
+    public double getLastX() {
+        return lastPos.x;
+    }
+    
+    public double getLastY() {
+        return lastPos.y;
+    }
+    
+    /**
+     * Reposiciona o jogador durante a resolução de colisões, sem que o
+     * ajuste conte como movimento na escolha do estado (pulando ou caindo).
+     */
+    public void moveTo( double x, double y ) {
+        rect.x = x;
+        rect.y = y;
+        prevPos.x = x;
+        prevPos.y = y;
+        updateCollisionProbes();
+    }
+    
+    public double getInterpolatedX( double alpha ) {
+        return lastPos.x + ( rect.x - lastPos.x ) * alpha;
+    }
+    
+    public double getInterpolatedY( double alpha ) {
+        return lastPos.y + ( rect.y - lastPos.y ) * alpha;
+    }
+    
+    public void draw( DrawTarget e, double alpha ) {
+        
+        Sprite currentSprite;
         
         if ( state == State.JUMPING ) {
             if ( running ) {
                 if ( direction == Direction.LEFT ) {
-                    currentImage = jumpRunningLeftImage;
+                    currentSprite = jumpRunningLeftSprite;
                 } else {
-                    currentImage = jumpRunningRightImage;
+                    currentSprite = jumpRunningRightSprite;
                 }
             } else {
                 if ( direction == Direction.LEFT ) {
-                    currentImage = jumpLeftImage;
+                    currentSprite = jumpLeftSprite;
                 } else {
-                    currentImage = jumpRightImage;
+                    currentSprite = jumpRightSprite;
                 }
             }
         } else if ( state == State.FALLING ) {
             if ( direction == Direction.LEFT ) {
-                currentImage = fallingLeftImage;
+                currentSprite = fallingLeftSprite;
             } else {
-                currentImage = fallingRightImage;
+                currentSprite = fallingRightSprite;
             }
         } else { // ON_GROUND
             if ( direction == Direction.LEFT ) {
                 if ( idle ) {
-                    currentImage = walkLeftAnimation.getIdleFrameImage();
+                    currentSprite = walkLeftAnimation.getIdleFrameSprite();
                 } else {
-                    currentImage = walkLeftAnimation.getFrameImage();
+                    currentSprite = walkLeftAnimation.getFrameSprite();
                 }
             } else {
                 if ( idle ) {
-                    currentImage = walkRightAnimation.getIdleFrameImage();
+                    currentSprite = walkRightAnimation.getIdleFrameSprite();
                 } else {
-                    currentImage = walkRightAnimation.getFrameImage();
+                    currentSprite = walkRightAnimation.getFrameSprite();
                 }
 
             }
         }
         
-        e.drawImage( currentImage, rect.x - rect.width / 2, rect.y - rect.height / 2 );
+        currentSprite.draw( e, getInterpolatedX( alpha ) - rect.width / 2, getInterpolatedY( alpha ) - rect.height / 2 );
         
         /*e.fillRectangle( rect.x - rect.width / 2, rect.y - rect.height / 2, rect.width, rect.height, color );
         e.drawRectangle( rect.x - rect.width / 2, rect.y - rect.height / 2, rect.width, rect.height, Engine.BLACK );*/
@@ -241,6 +321,10 @@ public class Player {
         
     }
     
+    public void setJumpSound( SoundEffect jumpSound ) {
+        this.jumpSound = jumpSound;
+    }
+    
     public void setOnGround() {
         vel.y = 0.0;
         state = State.ON_GROUND;
@@ -269,17 +353,19 @@ public class Player {
         
     }
     
-    public CollisionType checkCollision( Enemy enemy ) {
+    /**
+     * Testa as sondas de colisão contra uma caixa dada por coordenadas,
+     * usada com entidades guardadas em arrays.
+     */
+    public CollisionType checkCollision( double x, double y, double width, double height ) {
         
-        Rectangle blockBB = enemy.getBoundingBox();
-        
-        if ( CollisionUtils.checkCollisionRectangles( cpUp, blockBB ) ) {
+        if ( overlaps( cpUp, x, y, width, height ) ) {
             return CollisionType.UP;
-        } else if ( CollisionUtils.checkCollisionRectangles( cpDown, blockBB ) ) {
+        } else if ( overlaps( cpDown, x, y, width, height ) ) {
             return CollisionType.DOWN;
-        } else if ( CollisionUtils.checkCollisionRectangles( cpLeft, blockBB ) ) {
+        } else if ( overlaps( cpLeft, x, y, width, height ) ) {
             return CollisionType.LEFT;
-        } else if ( CollisionUtils.checkCollisionRectangles( cpRight, blockBB ) ) {
+        } else if ( overlaps( cpRight, x, y, width, height ) ) {
             return CollisionType.RIGHT;
         }
         
@@ -294,13 +380,20 @@ public class Player {
         vel.y = -jumpSpeed;
         jumps++;
         state = State.JUMPING;
-        jumpSound.play();
+        if ( jumpSound != null ) {
+            jumpSound.play();
+        }
         walkRightAnimation.reset();
         walkLeftAnimation.reset();
     }
     
-    public boolean checkCollision( Coin coin ) {
-        return CollisionUtils.checkCollisionRectangles( getBoundingBox(), coin.rect );
+    public boolean checkOverlap( double x, double y, double width, double height ) {
+        return overlaps( rect, x, y, width, height );
+    }
+    
+    private static boolean overlaps( Rectangle r, double x, double y, double width, double height ) {
+        return r.x < x + width && r.x + r.width > x &&
+               r.y < y + height && r.y + r.height > y;
     }
     
 }
@@ -0,0 +1,73 @@
+package jsgeplatformer;
+
+/**
+ * Fonte de entrada que reproduz uma InputRecording, um frame por vez.
+ *
+ * A cada frame, quem conduz o replay chama next, que avança para o
+ * próximo frame gravado e retorna o seu tempo; depois do passo, check
+ * compara o checksum do mundo com o gravado. A primeira divergência fica
+ * registrada em getDivergentFrame.
+ *
+ * @author Prof. Dr. David Buzatto
+ */
+public class ReplayInput implements InputSource {
+
+    private InputRecording recording;
+    private int frame = -1;
+    private int divergentFrame = -1;
+
+    public ReplayInput( InputRecording recording ) {
+        this.recording = recording;
+    }
+
+    @Override
+    public boolean isKeyDown( int keyCode ) {
+        return frame >= 0 && recording.isKeyDown( frame, keyCode );
+    }
+
+    @Override
+    public boolean isKeyPressed( int keyCode ) {
+        return frame >= 0 && recording.isKeyPressed( frame, keyCode );
+    }
+
+    public boolean hasNext() {
+        return frame + 1 < recording.size();
+    }
+
+    /**
+     * Avança para o próximo frame gravado e retorna o seu tempo.
+     */
+    public double next() {
+        frame++;
+        return recording.getDelta( frame );
+    }
+
+    /**
+     * Compara o checksum do mundo depois do frame atual com o gravado.
+     */
+    public boolean check( long checksum ) {
+        if ( checksum != recording.getChecksum( frame ) ) {
+            if ( divergentFrame < 0 ) {
+                divergentFrame = frame;
+            }
+            return false;
+        }
+        return true;
+    }
+
+    public int getFrame() {
+        return frame;
+    }
+
+    /**
+     * O primeiro frame em que o mundo divergiu da gravação, ou -1.
+     */
+    public int getDivergentFrame() {
+        return divergentFrame;
+    }
+
+    public InputRecording getRecording() {
+        return recording;
+    }
+
+}
@@ -0,0 +1,62 @@
+package jsgeplatformer;
+
+/**
+ * Efeito sonoro já decodificado, pronto para ser misturado pelo
+ * SoundEffects que o carregou.
+ *
+ * As amostras ficam em PCM de 16 bits, estéreo intercalado, na taxa do
+ * mixer. Tocar apenas enfileira um pedido, então pode ser chamado de dentro
+ * dos laços de atualização e colisão sem travar o jogo.
+ *
+ * @author Prof. Dr. David Buzatto
+ */
+public class SoundEffect {
+
+    private SoundEffects engine;
+    private String name;
+    short[] samples;
+    int frames;
+    int maxVoices;
+    volatile float volume;
+
+    SoundEffect( SoundEffects engine, String name, short[] samples, int maxVoices, float volume ) {
+        this.engine = engine;
+        this.name = name;
+        this.samples = samples;
+        this.frames = samples.length / 2;
+        this.maxVoices = maxVoices;
+        this.volume = volume;
+    }
+
+    /**
+     * Pede ao mixer para tocar o efeito. Nunca bloqueia; se a fila de
+     * pedidos estiver cheia, o pedido é descartado.
+     */
+    public void play() {
+        engine.play( this );
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Duração em segundos.
+     */
+    public double getDuration() {
+        return (double) frames / SoundEffects.SAMPLE_RATE;
+    }
+
+    public int getMaxVoices() {
+        return maxVoices;
+    }
+
+    public float getVolume() {
+        return volume;
+    }
+
+    public void setVolume( float volume ) {
+        this.volume = volume;
+    }
+
+}
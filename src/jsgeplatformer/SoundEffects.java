@@ -0,0 +1,429 @@
+package jsgeplatformer;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * Mixer de efeitos sonoros com um número fixo de vozes, em uma thread
+ * própria.
+ *
+ * Os efeitos são decodificados uma única vez, no carregamento. Tocar um
+ * efeito só coloca um pedido em uma fila sem travas, então o jogo nunca
+ * espera pelo áudio. A thread de áudio esvazia a fila, atribui cada pedido
+ * a uma voz e mistura as vozes ativas em blocos curtos, escritos em uma
+ * SourceDataLine. Cada efeito tem um limite de vozes simultâneas; acima
+ * dele, ou sem vozes livres, a voz mais antiga (do mesmo efeito, ou de
+ * qualquer um) é roubada, em vez de os sons se empilharem.
+ *
+ * Sem dispositivo de áudio, o mixer segue funcionando em silêncio: os
+ * pedidos continuam sendo aceitos e descartados.
+ *
+ * @author Prof. Dr. David Buzatto
+ */
+public class SoundEffects {
+
+    public static final float SAMPLE_RATE = 44100;
+    public static final AudioFormat FORMAT = new AudioFormat( SAMPLE_RATE, 16, 2, true, false );
+
+    // quadros (amostras estéreo) por bloco de mistura, cerca de 12 ms
+    private static final int BLOCK_FRAMES = 512;
+
+    private int voiceCount;
+    private SoundEffect[] voiceEffects;
+    private int[] voicePositions;
+    private float[] voiceVolumes;
+    private long[] voiceStarts;
+    private long startCount;
+
+    /*
+     * Fila limitada de múltiplos produtores e um consumidor: cada posição
+     * tem um número de sequência que diz se ela está livre para o produtor
+     * da volta atual ou publicada para o consumidor.
+     */
+    private int queueMask;
+    private SoundEffect[] queueEffects;
+    private float[] queueVolumes;
+    private AtomicLongArray queueSequences;
+    private AtomicLong queueHead = new AtomicLong();
+    private long queueTail;
+
+    private int[] mix = new int[BLOCK_FRAMES * 2];
+    private byte[] block = new byte[BLOCK_FRAMES * 4];
+
+    private SourceDataLine line;
+    private Thread thread;
+    private volatile boolean running;
+
+    private AtomicLong droppedRequests = new AtomicLong();
+    private volatile long playedCount;
+    private volatile long stolenCount;
+
+    /**
+     * @param voices Quantidade de efeitos tocando ao mesmo tempo.
+     * @param queueCapacity Pedidos pendentes (arredondado para potência de 2).
+     */
+    public SoundEffects( int voices, int queueCapacity ) {
+
+        voiceCount = voices;
+        voiceEffects = new SoundEffect[voices];
+        voicePositions = new int[voices];
+        voiceVolumes = new float[voices];
+        voiceStarts = new long[voices];
+
+        int capacity = Integer.highestOneBit( Math.max( queueCapacity, 2 ) - 1 ) * 2;
+        queueMask = capacity - 1;
+        queueEffects = new SoundEffect[capacity];
+        queueVolumes = new float[capacity];
+        queueSequences = new AtomicLongArray( capacity );
+        for ( int i = 0; i < capacity; i++ ) {
+            queueSequences.set( i, i );
+        }
+
+    }
+
+    /**
+     * Dezesseis vozes e até 64 pedidos pendentes.
+     */
+    public SoundEffects() {
+        this( 16, 64 );
+    }
+
+    /**
+     * Decodifica um arquivo de áudio (WAV, AIFF, AU) para o formato do
+     * mixer. Pode ser chamado de qualquer thread, como as do AssetLoader.
+     *
+     * @param maxVoices Quantas instâncias do efeito podem tocar juntas.
+     */
+    public SoundEffect load( String filePath, int maxVoices ) throws IOException {
+
+        File file = new File( filePath );
+
+        try ( InputStream in = new BufferedInputStream( Files.newInputStream( file.toPath() ) );
+              AudioInputStream source = AudioSystem.getAudioInputStream( in ) ) {
+
+            AudioFormat sourceFormat = source.getFormat();
+            int channels = sourceFormat.getChannels();
+            AudioFormat pcmFormat = new AudioFormat( sourceFormat.getSampleRate(), 16, channels, true, false );
+
+            byte[] bytes;
+            try ( AudioInputStream pcm = AudioSystem.getAudioInputStream( pcmFormat, source ) ) {
+                bytes = pcm.readAllBytes();
+            }
+
+            short[] samples = toMixerFormat( bytes, channels, sourceFormat.getSampleRate() );
+            return new SoundEffect( this, file.getName(), samples, Math.max( maxVoices, 1 ), 1 );
+
+        } catch ( UnsupportedAudioFileException | IllegalArgumentException exc ) {
+            throw new IOException( "unsupported audio file: " + filePath, exc );
+        }
+
+    }
+
+    /**
+     * Converte PCM de 16 bits little-endian, com qualquer número de canais e
+     * taxa, para estéreo na taxa do mixer (interpolação linear).
+     */
+    private static short[] toMixerFormat( byte[] bytes, int channels, float sampleRate ) {
+
+        int sourceFrames = bytes.length / ( 2 * channels );
+        double step = sampleRate / SAMPLE_RATE;
+        int frames = (int) Math.floor( sourceFrames / step );
+        short[] samples = new short[frames * 2];
+
+        for ( int f = 0; f < frames; f++ ) {
+
+            double position = f * step;
+            int i = (int) position;
+            double t = position - i;
+            int j = Math.min( i + 1, sourceFrames - 1 );
+
+            for ( int c = 0; c < 2; c++ ) {
+                int channel = Math.min( c, channels - 1 );
+                double a = sample( bytes, ( i * channels + channel ) * 2 );
+                double b = sample( bytes, ( j * channels + channel ) * 2 );
+                samples[f * 2 + c] = (short) Math.round( a + ( b - a ) * t );
+            }
+
+        }
+
+        return samples;
+
+    }
+
+    private static short sample( byte[] bytes, int offset ) {
+        return (short) ( ( bytes[offset] & 0xFF ) | ( bytes[offset + 1] << 8 ) );
+    }
+
+    /**
+     * Abre a saída de áudio e inicia a thread de mistura.
+     *
+     * @return false se não houver saída de áudio; o mixer fica mudo.
+     */
+    public boolean start() {
+
+        if ( running ) {
+            return line != null;
+        }
+
+        try {
+            line = AudioSystem.getSourceDataLine( FORMAT );
+            // três blocos de buffer na saída: latência baixa sem estalos
+            line.open( FORMAT, BLOCK_FRAMES * 4 * 3 );
+            line.start();
+        } catch ( LineUnavailableException | IllegalArgumentException | SecurityException exc ) {
+            line = null;
+        }
+
+        running = true;
+        thread = new Thread( this::run, "sound-effects" );
+        thread.setDaemon( true );
+        thread.setPriority( Thread.MAX_PRIORITY );
+        thread.start();
+
+        return line != null;
+
+    }
+
+    /**
+     * Para a thread de mistura e fecha a saída.
+     */
+    public void shutdown() {
+
+        running = false;
+
+        if ( thread != null ) {
+            thread.interrupt();
+            try {
+                thread.join( 1000 );
+            } catch ( InterruptedException exc ) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if ( line != null ) {
+            line.close();
+        }
+
+    }
+
+    /**
+     * Enfileira um pedido para tocar o efeito, com o volume atual dele.
+     *
+     * @return false se a fila estava cheia e o pedido foi descartado.
+     */
+    public boolean play( SoundEffect effect ) {
+
+        long head;
+        int slot;
+
+        while ( true ) {
+            head = queueHead.get();
+            slot = (int) head & queueMask;
+            long sequence = queueSequences.get( slot );
+            if ( sequence == head ) {
+                if ( queueHead.compareAndSet( head, head + 1 ) ) {
+                    break;
+                }
+            } else if ( sequence < head ) {
+                droppedRequests.incrementAndGet();
+                return false;
+            }
+        }
+
+        queueEffects[slot] = effect;
+        queueVolumes[slot] = effect.volume;
+        queueSequences.set( slot, head + 1 );
+
+        return true;
+
+    }
+
+    private void run() {
+
+        long blockNanos = (long) ( BLOCK_FRAMES / SAMPLE_RATE * 1e9 );
+
+        while ( running ) {
+
+            drainQueue();
+            mixBlock();
+
+            if ( line != null ) {
+                // bloqueia até haver espaço na saída, o que dá o ritmo da mistura
+                line.write( block, 0, block.length );
+            } else {
+                try {
+                    Thread.sleep( blockNanos / 1_000_000, (int) ( blockNanos % 1_000_000 ) );
+                } catch ( InterruptedException exc ) {
+                    return;
+                }
+            }
+
+        }
+
+    }
+
+    /**
+     * Inicia uma voz para cada pedido pendente.
+     */
+    void drainQueue() {
+
+        while ( true ) {
+
+            int slot = (int) queueTail & queueMask;
+            if ( queueSequences.get( slot ) != queueTail + 1 ) {
+                return;
+            }
+
+            SoundEffect effect = queueEffects[slot];
+            float volume = queueVolumes[slot];
+            queueEffects[slot] = null;
+            queueSequences.set( slot, queueTail + queueMask + 1 );
+            queueTail++;
+
+            startVoice( effect, volume );
+
+        }
+
+    }
+
+    private void startVoice( SoundEffect effect, float volume ) {
+
+        int playing = 0;
+        int oldestSame = -1;
+        int oldest = -1;
+        int free = -1;
+
+        for ( int v = 0; v < voiceCount; v++ ) {
+            SoundEffect e = voiceEffects[v];
+            if ( e == null ) {
+                if ( free < 0 ) {
+                    free = v;
+                }
+            } else {
+                if ( e == effect ) {
+                    playing++;
+                    if ( oldestSame < 0 || voiceStarts[v] < voiceStarts[oldestSame] ) {
+                        oldestSame = v;
+                    }
+                }
+                if ( oldest < 0 || voiceStarts[v] < voiceStarts[oldest] ) {
+                    oldest = v;
+                }
+            }
+        }
+
+        int voice;
+        if ( playing >= effect.maxVoices ) {
+            voice = oldestSame;
+            stolenCount++;
+        } else if ( free >= 0 ) {
+            voice = free;
+        } else {
+            voice = oldest;
+            stolenCount++;
+        }
+
+        voiceEffects[voice] = effect;
+        voicePositions[voice] = 0;
+        voiceVolumes[voice] = volume;
+        voiceStarts[voice] = startCount++;
+        playedCount++;
+
+    }
+
+    /**
+     * Mistura as vozes ativas em um bloco de PCM de 16 bits.
+     */
+    void mixBlock() {
+
+        Arrays.fill( mix, 0 );
+
+        for ( int v = 0; v < voiceCount; v++ ) {
+
+            SoundEffect effect = voiceEffects[v];
+            if ( effect == null ) {
+                continue;
+            }
+
+            short[] samples = effect.samples;
+            int position = voicePositions[v];
+            int frames = Math.min( BLOCK_FRAMES, effect.frames - position );
+            int gain = (int) ( voiceVolumes[v] * 256 );
+
+            for ( int i = 0, s = position * 2; i < frames * 2; i++, s++ ) {
+                mix[i] += samples[s] * gain >> 8;
+            }
+
+            position += frames;
+            if ( position >= effect.frames ) {
+                voiceEffects[v] = null;
+            } else {
+                voicePositions[v] = position;
+            }
+
+        }
+
+        for ( int i = 0; i < mix.length; i++ ) {
+            int value = Math.max( Short.MIN_VALUE, Math.min( Short.MAX_VALUE, mix[i] ) );
+            block[i * 2] = (byte) value;
+            block[i * 2 + 1] = (byte) ( value >> 8 );
+        }
+
+    }
+
+    /**
+     * Quantas vozes estão tocando agora (lido de fora da thread de áudio,
+     * é só uma aproximação).
+     */
+    public int getActiveVoices() {
+        int count = 0;
+        for ( int v = 0; v < voiceCount; v++ ) {
+            if ( voiceEffects[v] != null ) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public int getVoiceCount() {
+        return voiceCount;
+    }
+
+    public long getPlayedCount() {
+        return playedCount;
+    }
+
+    /**
+     * Vozes interrompidas para dar lugar a um pedido mais novo.
+     */
+    public long getStolenCount() {
+        return stolenCount;
+    }
+
+    /**
+     * Pedidos descartados porque a fila estava cheia.
+     */
+    public long getDroppedRequests() {
+        return droppedRequests.get();
+    }
+
+    /**
+     * Se há uma saída de áudio aberta (o mixer pode estar mudo).
+     */
+    public boolean isAudible() {
+        return line != null;
+    }
+
+}
@@ -0,0 +1,54 @@
+package jsgeplatformer;
+
+import br.com.davidbuzatto.jsge.geom.Rectangle;
+import br.com.davidbuzatto.jsge.image.Image;
+
+/**
+ * Região retangular de uma imagem, normalmente de um SpriteAtlas.
+ *
+ * @author Prof. Dr. David Buzatto
+ */
+public class Sprite {
+
+    public Image image;
+    public Rectangle source;
+
+    private int[] pixels;
+
+    public Sprite( Image image, Rectangle source ) {
+        this.image = image;
+        this.source = source;
+    }
+
+    /**
+     * Sprite que ocupa a imagem inteira.
+     */
+    public Sprite( Image image ) {
+        this( image, new Rectangle( 0, 0, image.getWidth(), image.getHeight() ) );
+    }
+
+    public void draw( DrawTarget e, double x, double y ) {
+        e.drawImage( image, source, x, y );
+    }
+
+    /**
+     * Pixels do sprite em ARGB, linha a linha, lidos da imagem na primeira
+     * chamada.
+     */
+    public int[] getPixels() {
+        if ( pixels == null ) {
+            int w = (int) source.width;
+            pixels = image.buffImage.getRGB( (int) source.x, (int) source.y, w, (int) source.height, null, 0, w );
+        }
+        return pixels;
+    }
+
+    public double getWidth() {
+        return source.width;
+    }
+
+    public double getHeight() {
+        return source.height;
+    }
+
+}
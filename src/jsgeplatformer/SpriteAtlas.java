@@ -0,0 +1,310 @@
+package jsgeplatformer;
+
+import br.com.davidbuzatto.jsge.geom.Rectangle;
+import br.com.davidbuzatto.jsge.image.Image;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import javax.imageio.ImageIO;
+
+/**
+ * Atlas de sprites: as imagens pequenas de um diretório, junto com suas
+ * versões espelhadas na horizontal, empacotadas em uma única imagem.
+ *
+ * O atlas é montado na primeira execução e guardado em disco (atlas.png e
+ * atlas.txt). Enquanto as imagens de origem não mudarem, as execuções
+ * seguintes apenas carregam esse cache. Também pode ser gerado no build:
+ *
+ * java jsgeplatformer.SpriteAtlas [diretório das imagens] [diretório do cache]
+ *
+ * @author Prof. Dr. David Buzatto
+ */
+public class SpriteAtlas {
+
+    public static final String FLIPPED_SUFFIX = "_flipped";
+
+    // imagens maiores que isso, como os fundos, ficam fora do atlas
+    public static final int MAX_SPRITE_SIZE = 128;
+
+    public static final String DEFAULT_IMAGE_DIR = "resources/images";
+    public static final String DEFAULT_CACHE_DIR = "cache/atlas";
+
+    private static final int FORMAT_VERSION = 1;
+    private static final int PADDING = 1;
+    private static final String IMAGE_FILE = "atlas.png";
+    private static final String INDEX_FILE = "atlas.txt";
+
+    private Image image;
+    private Map<String, Sprite> sprites = new HashMap<>();
+    private Map<Sprite, Sprite> mirrors = new IdentityHashMap<>();
+
+    private SpriteAtlas( Image image ) {
+        this.image = image;
+    }
+
+    public Sprite get( String name ) {
+        Sprite sprite = sprites.get( name );
+        if ( sprite == null ) {
+            throw new IllegalArgumentException( "sprite not in atlas: " + name );
+        }
+        return sprite;
+    }
+
+    /**
+     * A versão espelhada na horizontal do sprite.
+     */
+    public Sprite getFlipped( String name ) {
+        return get( name + FLIPPED_SUFFIX );
+    }
+
+    /**
+     * A outra versão (espelhada ou original) de um sprite deste atlas, ou
+     * null se o sprite não for dele.
+     */
+    public Sprite getMirror( Sprite sprite ) {
+        return mirrors.get( sprite );
+    }
+
+    public Image getImage() {
+        return image;
+    }
+
+    public int getSpriteCount() {
+        return sprites.size();
+    }
+
+    /**
+     * Carrega o atlas do cache ou, se ele não existir ou estiver
+     * desatualizado em relação às imagens de imageDir, monta um novo e tenta
+     * gravá-lo em cacheDir.
+     */
+    public static SpriteAtlas load( String imageDir, String cacheDir ) throws IOException {
+
+        File[] files = listImages( new File( imageDir ) );
+        long signature = signature( files );
+
+        File imageFile = new File( cacheDir, IMAGE_FILE );
+        File indexFile = new File( cacheDir, INDEX_FILE );
+
+        if ( imageFile.isFile() && indexFile.isFile() ) {
+            try {
+                SpriteAtlas atlas = read( imageFile, indexFile, signature );
+                if ( atlas != null ) {
+                    return atlas;
+                }
+            } catch ( IOException | RuntimeException exc ) {
+                // cache corrompido, será reconstruído
+            }
+        }
+
+        SpriteAtlas atlas = build( files );
+
+        try {
+            atlas.write( imageFile, indexFile, signature );
+        } catch ( IOException exc ) {
+            // sem permissão de escrita: segue com o atlas em memória
+        }
+
+        return atlas;
+
+    }
+
+    /**
+     * Empacota as imagens em prateleiras, da mais alta para a mais baixa.
+     */
+    public static SpriteAtlas build( File[] files ) throws IOException {
+
+        List<String> names = new ArrayList<>();
+        List<BufferedImage> images = new ArrayList<>();
+
+        for ( File f : files ) {
+            BufferedImage bi = ImageIO.read( f );
+            if ( bi == null ) {
+                throw new IOException( "not an image: " + f );
+            }
+            if ( bi.getWidth() <= MAX_SPRITE_SIZE && bi.getHeight() <= MAX_SPRITE_SIZE ) {
+                names.add( spriteName( f ) );
+                images.add( bi );
+            }
+        }
+
+        // cada imagem entra duas vezes: a original e a espelhada
+        int count = names.size() * 2;
+        Integer[] entries = new Integer[count];
+        int area = 0;
+        int maxWidth = 0;
+
+        for ( int i = 0; i < count; i++ ) {
+            BufferedImage bi = images.get( i / 2 );
+            entries[i] = i;
+            area += ( bi.getWidth() + PADDING ) * ( bi.getHeight() + PADDING );
+            maxWidth = Math.max( maxWidth, bi.getWidth() + PADDING );
+        }
+
+        Arrays.sort( entries, ( a, b ) -> {
+            int c = Integer.compare( images.get( b / 2 ).getHeight(), images.get( a / 2 ).getHeight() );
+            return c != 0 ? c : Integer.compare( a, b );
+        });
+
+        int width = Integer.highestOneBit( Math.max( maxWidth, (int) Math.ceil( Math.sqrt( area ) ) ) - 1 ) * 2;
+        int[] px = new int[count];
+        int[] py = new int[count];
+        int x = 0;
+        int y = 0;
+        int shelfHeight = 0;
+
+        for ( int e : entries ) {
+            BufferedImage bi = images.get( e / 2 );
+            if ( x + bi.getWidth() > width ) {
+                x = 0;
+                y += shelfHeight + PADDING;
+                shelfHeight = 0;
+            }
+            px[e] = x;
+            py[e] = y;
+            x += bi.getWidth() + PADDING;
+            shelfHeight = Math.max( shelfHeight, bi.getHeight() );
+        }
+
+        BufferedImage atlasImage = new BufferedImage( width, Math.max( y + shelfHeight, 1 ), BufferedImage.TYPE_INT_ARGB );
+        Graphics2D g2d = atlasImage.createGraphics();
+        SpriteAtlas atlas = new SpriteAtlas( new Image( atlasImage ) );
+
+        for ( int e = 0; e < count; e++ ) {
+
+            BufferedImage bi = images.get( e / 2 );
+            int w = bi.getWidth();
+            int h = bi.getHeight();
+            String name = names.get( e / 2 );
+
+            if ( e % 2 == 0 ) {
+                g2d.drawImage( bi, px[e], py[e], null );
+            } else {
+                g2d.drawImage( bi, px[e] + w, py[e], -w, h, null );
+                name += FLIPPED_SUFFIX;
+            }
+
+            atlas.put( name, px[e], py[e], w, h );
+
+        }
+
+        g2d.dispose();
+
+        return atlas;
+
+    }
+
+    private void put( String name, double x, double y, double width, double height ) {
+
+        Sprite sprite = new Sprite( image, new Rectangle( x, y, width, height ) );
+        sprites.put( name, sprite );
+
+        String mirrorName = name.endsWith( FLIPPED_SUFFIX ) ?
+            name.substring( 0, name.length() - FLIPPED_SUFFIX.length() ) : name + FLIPPED_SUFFIX;
+        Sprite mirror = sprites.get( mirrorName );
+        if ( mirror != null ) {
+            mirrors.put( sprite, mirror );
+            mirrors.put( mirror, sprite );
+        }
+
+    }
+
+    private void write( File imageFile, File indexFile, long signature ) throws IOException {
+
+        Files.createDirectories( imageFile.getParentFile().toPath() );
+        ImageIO.write( image.buffImage, "png", imageFile );
+
+        try ( PrintWriter out = new PrintWriter( indexFile, StandardCharsets.UTF_8 ) ) {
+            out.println( FORMAT_VERSION + " " + signature );
+            for ( Map.Entry<String, Sprite> e : sprites.entrySet() ) {
+                Rectangle r = e.getValue().source;
+                out.printf( "%s %d %d %d %d%n", e.getKey(), (int) r.x, (int) r.y, (int) r.width, (int) r.height );
+            }
+        }
+
+    }
+
+    /**
+     * Lê o atlas do cache, ou retorna null se ele não corresponder à
+     * assinatura das imagens de origem.
+     */
+    private static SpriteAtlas read( File imageFile, File indexFile, long signature ) throws IOException {
+
+        try ( BufferedReader in = Files.newBufferedReader( indexFile.toPath(), StandardCharsets.UTF_8 ) ) {
+
+            String[] header = in.readLine().split( " " );
+            if ( Integer.parseInt( header[0] ) != FORMAT_VERSION || Long.parseLong( header[1] ) != signature ) {
+                return null;
+            }
+
+            BufferedImage bi = ImageIO.read( imageFile );
+            if ( bi == null ) {
+                return null;
+            }
+
+            SpriteAtlas atlas = new SpriteAtlas( new Image( bi ) );
+
+            String line;
+            while ( ( line = in.readLine() ) != null ) {
+                String[] p = line.split( " " );
+                atlas.put( p[0],
+                    Integer.parseInt( p[1] ), Integer.parseInt( p[2] ),
+                    Integer.parseInt( p[3] ), Integer.parseInt( p[4] ) );
+            }
+
+            return atlas;
+
+        }
+
+    }
+
+    private static File[] listImages( File dir ) throws IOException {
+        File[] files = dir.listFiles( ( d, name ) -> name.toLowerCase().endsWith( ".png" ) );
+        if ( files == null ) {
+            throw new IOException( "image directory not found: " + dir );
+        }
+        Arrays.sort( files );
+        return files;
+    }
+
+    private static long signature( File[] files ) {
+        CRC32 crc = new CRC32();
+        for ( File f : files ) {
+            crc.update( ( f.getName() + ":" + f.length() + ":" + f.lastModified() + ";" ).getBytes( StandardCharsets.UTF_8 ) );
+        }
+        return crc.getValue();
+    }
+
+    private static String spriteName( File f ) {
+        String name = f.getName();
+        return name.substring( 0, name.lastIndexOf( '.' ) );
+    }
+
+    public static void main( String[] args ) throws IOException {
+
+        String imageDir = args.length > 0 ? args[0] : DEFAULT_IMAGE_DIR;
+        String cacheDir = args.length > 1 ? args[1] : DEFAULT_CACHE_DIR;
+
+        File[] files = listImages( new File( imageDir ) );
+        SpriteAtlas atlas = build( files );
+        atlas.write( new File( cacheDir, IMAGE_FILE ), new File( cacheDir, INDEX_FILE ), signature( files ) );
+
+        System.out.printf( "%d sprites from %d images packed into %dx%d (%s)%n",
+            atlas.getSpriteCount(), files.length,
+            atlas.image.getWidth(), atlas.image.getHeight(), cacheDir );
+
+    }
+
+}
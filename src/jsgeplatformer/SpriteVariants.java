@@ -0,0 +1,242 @@
+package jsgeplatformer;
+
+import br.com.davidbuzatto.jsge.image.Image;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache das variações de sprites (espelhados, tingidos, em outra escala),
+ * criadas sob demanda e compartilhadas por todas as entidades.
+ *
+ * Cada variação é identificada pelo sprite de origem e pela transformação,
+ * então pedir a mesma variação de novo, de qualquer entidade, devolve a
+ * mesma imagem. As imagens criadas ocupam no máximo o orçamento de memória
+ * dado; acima dele, as usadas há mais tempo são descartadas e recriadas se
+ * forem pedidas de novo. Quem guarda uma variação mantém a imagem viva
+ * mesmo depois do descarte, então, para o limite valer, o ideal é pedir a
+ * variação na hora de desenhar (a consulta não aloca).
+ *
+ * O espelhamento horizontal de um sprite de SpriteAtlas não ocupa o
+ * orçamento: a versão espelhada já está empacotada no atlas.
+ *
+ * @author Prof. Dr. David Buzatto
+ */
+public class SpriteVariants {
+
+    public static final int FLIP_X = 1;
+    public static final int FLIP_Y = 2;
+
+    private SpriteAtlas atlas;
+    private long budget;
+    private long memoryUsed;
+
+    private Map<Key, Sprite> variants = new LinkedHashMap<>( 16, 0.75f, true );
+    private Key probe = new Key();
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param atlas Atlas de onde vêm os sprites já espelhados, ou null.
+     * @param budget Memória máxima das variações criadas, em bytes.
+     */
+    public SpriteVariants( SpriteAtlas atlas, long budget ) {
+        this.atlas = atlas;
+        this.budget = budget;
+    }
+
+    /**
+     * Orçamento de 4 MB.
+     */
+    public SpriteVariants( SpriteAtlas atlas ) {
+        this( atlas, 4 * 1024 * 1024 );
+    }
+
+    public Sprite getFlipped( Sprite sprite ) {
+        return get( sprite, FLIP_X, null, 1 );
+    }
+
+    public Sprite getTinted( Sprite sprite, Color tint ) {
+        return get( sprite, 0, tint, 1 );
+    }
+
+    public Sprite getScaled( Sprite sprite, double scale ) {
+        return get( sprite, 0, null, scale );
+    }
+
+    /**
+     * A variação do sprite com a transformação dada.
+     *
+     * @param flips FLIP_X e/ou FLIP_Y.
+     * @param tint Cor multiplicada pelos pixels, ou null.
+     * @param scale Escala, com o pixel mais próximo.
+     */
+    public synchronized Sprite get( Sprite sprite, int flips, Color tint, double scale ) {
+
+        if ( flips == 0 && tint == null && scale == 1 ) {
+            return sprite;
+        }
+
+        if ( flips == FLIP_X && tint == null && scale == 1 && atlas != null ) {
+            Sprite mirror = atlas.getMirror( sprite );
+            if ( mirror != null ) {
+                hits++;
+                return mirror;
+            }
+        }
+
+        probe.set( sprite, flips, tint, scale );
+        Sprite variant = variants.get( probe );
+        if ( variant != null ) {
+            hits++;
+            return variant;
+        }
+
+        misses++;
+        variant = create( sprite, flips, tint, scale );
+        variants.put( probe.copy(), variant );
+        memoryUsed += bytes( variant );
+
+        // a variação recém-criada fica, mesmo que sozinha passe do orçamento
+        Iterator<Sprite> eldest = variants.values().iterator();
+        while ( memoryUsed > budget && variants.size() > 1 ) {
+            memoryUsed -= bytes( eldest.next() );
+            eldest.remove();
+            evictions++;
+        }
+
+        return variant;
+
+    }
+
+    private static Sprite create( Sprite sprite, int flips, Color tint, double scale ) {
+
+        int sx = (int) sprite.source.x;
+        int sy = (int) sprite.source.y;
+        int sw = (int) sprite.source.width;
+        int sh = (int) sprite.source.height;
+        int w = Math.max( 1, (int) Math.round( sw * scale ) );
+        int h = Math.max( 1, (int) Math.round( sh * scale ) );
+
+        boolean flipX = ( flips & FLIP_X ) != 0;
+        boolean flipY = ( flips & FLIP_Y ) != 0;
+
+        BufferedImage bi = new BufferedImage( w, h, BufferedImage.TYPE_INT_ARGB );
+        Graphics2D g2d = bi.createGraphics();
+        g2d.setRenderingHint( RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR );
+        g2d.drawImage( sprite.image.buffImage,
+            flipX ? w : 0, flipY ? h : 0, flipX ? 0 : w, flipY ? 0 : h,
+            sx, sy, sx + sw, sy + sh, null );
+        g2d.dispose();
+
+        if ( tint != null ) {
+            int[] pixels = bi.getRGB( 0, 0, w, h, null, 0, w );
+            for ( int i = 0; i < pixels.length; i++ ) {
+                int p = pixels[i];
+                int a = ( p >>> 24 ) * tint.getAlpha() / 255;
+                int r = ( p >> 16 & 0xFF ) * tint.getRed() / 255;
+                int g = ( p >> 8 & 0xFF ) * tint.getGreen() / 255;
+                int b = ( p & 0xFF ) * tint.getBlue() / 255;
+                pixels[i] = a << 24 | r << 16 | g << 8 | b;
+            }
+            bi.setRGB( 0, 0, w, h, pixels, 0, w );
+        }
+
+        return new Sprite( new Image( bi ) );
+
+    }
+
+    private static long bytes( Sprite sprite ) {
+        return (long) sprite.image.getWidth() * sprite.image.getHeight() * 4;
+    }
+
+    /**
+     * Descarta todas as variações criadas.
+     */
+    public synchronized void clear() {
+        variants.clear();
+        memoryUsed = 0;
+    }
+
+    public synchronized int size() {
+        return variants.size();
+    }
+
+    public synchronized long getMemoryUsed() {
+        return memoryUsed;
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Sprite de origem e transformação. O sprite é comparado por
+     * identidade; a mesma região de outro objeto Sprite é outra chave.
+     */
+    private static class Key {
+
+        Sprite sprite;
+        int flips;
+        boolean tinted;
+        int tint;
+        double scale;
+
+        void set( Sprite sprite, int flips, Color tint, double scale ) {
+            this.sprite = sprite;
+            this.flips = flips;
+            this.tinted = tint != null;
+            this.tint = tint == null ? 0 : tint.getRGB();
+            this.scale = scale;
+        }
+
+        Key copy() {
+            Key key = new Key();
+            key.sprite = sprite;
+            key.flips = flips;
+            key.tinted = tinted;
+            key.tint = tint;
+            key.scale = scale;
+            return key;
+        }
+
+        @Override
+        public boolean equals( Object o ) {
+            if ( !( o instanceof Key ) ) {
+                return false;
+            }
+            Key k = (Key) o;
+            return sprite == k.sprite && flips == k.flips && tinted == k.tinted &&
+                   tint == k.tint && Double.compare( scale, k.scale ) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            int h = System.identityHashCode( sprite );
+            h = h * 31 + flips;
+            h = h * 31 + ( tinted ? tint : 1 );
+            h = h * 31 + Double.hashCode( scale );
+            return h;
+        }
+
+    }
+
+}
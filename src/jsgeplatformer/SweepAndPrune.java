@@ -0,0 +1,279 @@
+package jsgeplatformer;
+
+import java.util.Arrays;
+
+/**
+ * Fase ampla de colisão por ordenação e varredura sobre o eixo x dos
+ * inimigos.
+ * 
+ * A ordem é mantida entre frames e reordenada por inserção, que é quase
+ * linear já que as entidades se movem pouco de um frame para outro. A
+ * reordenação pode ser restrita a uma janela de posições quando só parte
+ * dos inimigos se moveu.
+ * 
+ * As remoções apenas anotam quem saiu e para onde o último inimigo foi
+ * movido; a ordem é compactada de uma vez, em uma única passada, no
+ * próximo sync (ou add). Até lá, as buscas não podem ser usadas.
+ * 
+ * @author Prof. Dr. David Buzatto
+ */
+public class SweepAndPrune {
+    
+    private int[] order = new int[64];
+    private int count;
+    private int[] result = new int[64];
+    
+    /*
+     * Remoções pendentes: os valores de order são os índices da última
+     * compactação; current leva cada um deles ao índice atual (-1 se
+     * removido) e original faz o caminho inverso.
+     */
+    private int[] current = new int[64];
+    private int[] original = new int[64];
+    private int removedCount;
+    
+    /**
+     * Aplica as remoções pendentes e reconstrói a ordem se a quantidade de
+     * inimigos mudou.
+     */
+    public void sync( EnemyStore enemies ) {
+        compact();
+        if ( count != enemies.size ) {
+            reset( enemies );
+        }
+    }
+    
+    /**
+     * Garante espaço para capacity inimigos sem realocar a ordem.
+     */
+    public void reserve( int capacity ) {
+        if ( order.length < capacity ) {
+            order = Arrays.copyOf( order, capacity );
+        }
+        if ( current.length < capacity ) {
+            current = new int[capacity];
+            original = new int[capacity];
+        }
+    }
+    
+    /**
+     * Reconstrói e ordena toda a ordem, por exemplo após recarregar a fase.
+     */
+    public void reset( EnemyStore enemies ) {
+        rebuild( enemies.size );
+        sort( enemies, 0, count );
+    }
+    
+    /**
+     * Reordena os inimigos que estão nas posições [from, to) da ordem,
+     * supondo que os demais não se moveram desde a última ordenação.
+     */
+    public void sort( EnemyStore enemies, int from, int to ) {
+        
+        double[] x = enemies.x;
+        
+        for ( int i = Math.max( from, 1 ); i < count; i++ ) {
+            
+            int e = order[i];
+            double ex = x[e];
+            
+            // fora da janela o restante já está ordenado
+            if ( i >= to && ex >= x[order[i - 1]] ) {
+                break;
+            }
+            
+            int j = i - 1;
+            while ( j >= 0 && x[order[j]] > ex ) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = e;
+            
+        }
+        
+    }
+    
+    /**
+     * Insere na ordem um inimigo recém adicionado ao armazém.
+     */
+    public void add( EnemyStore enemies, int i ) {
+        
+        compact();
+        
+        if ( count == order.length ) {
+            order = Arrays.copyOf( order, count * 2 );
+        }
+        
+        int p = upperBound( enemies, enemies.x[i] );
+        System.arraycopy( order, p, order, p + 1, count - p );
+        order[p] = i;
+        count++;
+        
+    }
+    
+    /**
+     * Retira o inimigo i da ordem. Deve ser chamado antes de
+     * EnemyStore.remove( i ), pois o último inimigo passará a ter o índice i.
+     * A ordem só é atualizada no próximo sync.
+     */
+    public void remove( EnemyStore enemies, int i ) {
+        
+        int last = enemies.size - 1;
+        
+        if ( removedCount == 0 ) {
+            if ( current.length < enemies.size ) {
+                current = new int[Math.max( enemies.size, current.length * 2 )];
+                original = new int[current.length];
+            }
+            for ( int k = 0; k < enemies.size; k++ ) {
+                current[k] = k;
+                original[k] = k;
+            }
+        }
+        
+        current[original[i]] = -1;
+        if ( i != last ) {
+            current[original[last]] = i;
+            original[i] = original[last];
+        }
+        removedCount++;
+        
+    }
+    
+    /**
+     * Primeira posição da ordem cujo centro em x é maior que minX.
+     */
+    public int lowerBound( EnemyStore enemies, double minX ) {
+        double[] x = enemies.x;
+        int low = 0;
+        int high = count;
+        while ( low < high ) {
+            int mid = ( low + high ) >>> 1;
+            if ( x[order[mid]] > minX ) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+    
+    /**
+     * Primeira posição da ordem cujo centro em x é maior ou igual a maxX.
+     */
+    public int upperBound( EnemyStore enemies, double maxX ) {
+        double[] x = enemies.x;
+        int low = 0;
+        int high = count;
+        while ( low < high ) {
+            int mid = ( low + high ) >>> 1;
+            if ( x[order[mid]] >= maxX ) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+    
+    /**
+     * Busca os inimigos cujo centro em x está no intervalo aberto
+     * (minX, maxX). Os índices encontrados ficam em getResult(), em ordem
+     * crescente de índice.
+     * 
+     * @return A quantidade de inimigos encontrados.
+     */
+    public int query( EnemyStore enemies, double minX, double maxX ) {
+        
+        int found = upperBound( enemies, maxX ) - lowerBound( enemies, minX );
+        if ( found > result.length ) {
+            result = new int[Math.max( found, result.length * 2 )];
+        }
+        
+        return query( enemies, minX, maxX, result );
+        
+    }
+    
+    /**
+     * Como query( enemies, minX, maxX ), mas guarda os índices em out, de
+     * quem chama, em vez do resultado compartilhado. Se out for pequeno
+     * demais, guarda apenas os primeiros que couberem e retorna a
+     * quantidade total, para que quem chama aumente out e repita a busca.
+     * 
+     * @return A quantidade de inimigos encontrados.
+     */
+    public int query( EnemyStore enemies, double minX, double maxX, int[] out ) {
+        
+        int from = lowerBound( enemies, minX );
+        int to = upperBound( enemies, maxX );
+        int found = Math.max( to - from, 0 );
+        int stored = Math.min( found, out.length );
+        
+        for ( int k = 0; k < stored; k++ ) {
+            out[k] = order[from + k];
+        }
+        
+        // poucos candidatos, inserção basta
+        for ( int i = 1; i < stored; i++ ) {
+            int e = out[i];
+            int j = i - 1;
+            while ( j >= 0 && out[j] > e ) {
+                out[j + 1] = out[j];
+                j--;
+            }
+            out[j + 1] = e;
+        }
+        
+        return found;
+        
+    }
+    
+    public int[] getResult() {
+        return result;
+    }
+    
+    /**
+     * Índices dos inimigos ordenados pelo centro em x.
+     */
+    public int[] getOrder() {
+        return order;
+    }
+    
+    public int getCount() {
+        return count;
+    }
+    
+    /**
+     * Tira da ordem os inimigos removidos e troca os índices dos que foram
+     * movidos, mantendo a ordem dos demais.
+     */
+    private void compact() {
+        
+        if ( removedCount == 0 ) {
+            return;
+        }
+        
+        int kept = 0;
+        for ( int p = 0; p < count; p++ ) {
+            int i = current[order[p]];
+            if ( i >= 0 ) {
+                order[kept++] = i;
+            }
+        }
+        count = kept;
+        removedCount = 0;
+        
+    }
+    
+    private void rebuild( int size ) {
+        removedCount = 0;
+        if ( order.length < size ) {
+            order = new int[Math.max( size, order.length * 2 )];
+        }
+        for ( int i = 0; i < size; i++ ) {
+            order[i] = i;
+        }
+        count = size;
+    }
+    
+}
@@ -0,0 +1,312 @@
+package jsgeplatformer;
+
+import br.com.davidbuzatto.jsge.image.Image;
+import java.util.Arrays;
+
+/**
+ * Cache de renderização dos tiles estáticos, agrupados em chunks pré-desenhados.
+ * 
+ * Cada chunk é desenhado em uma imagem uma única vez e só é refeito quando
+ * algum tile dentro dele muda. Apenas os chunks próximos à área visível ficam
+ * em memória; as imagens dos demais são reaproveitadas pelos chunks que
+ * entram na área, então andar pela fase não aloca imagens novas.
+ * 
+ * Quando os chunks são gravados em DrawLists e desenhados depois, uma
+ * imagem só é reaproveitada (ou redesenhada) quando nenhuma lista que
+ * ainda pode ser desenhada a usa; veja setFrame.
+ * 
+ * Os chunks da margem que ainda não existem são pré-desenhados, no máximo
+ * um por frame, para que já estejam prontos quando ficarem visíveis.
+ * 
+ * Os chunks são montados copiando os pixels dos sprites para um buffer,
+ * gravado de uma vez na imagem; desenhar com um Graphics2D alocaria a cada
+ * chunk refeito. Os tiles não se sobrepõem, então copiar equivale a
+ * desenhar sobre a imagem limpa.
+ * 
+ * @author Prof. Dr. David Buzatto
+ */
+public class TileChunkCache {
+    
+    private TileMap tileMap;
+    private int chunkTiles;
+    private int keepMargin;
+    private double chunkPixels;
+    
+    private int chunkColumns;
+    private int chunkLines;
+    private Image[] images;
+    private boolean[] dirty;
+    
+    private int[] cached;
+    private int cachedCount;
+    
+    private Image[] spare;
+    private long[] spareRetired;
+    private int spareCount;
+    
+    private long frame;
+    private long oldestFrameInUse = Long.MAX_VALUE;
+    
+    private int[] pixels;
+
+    /**
+     * @param chunkTiles Quantidade de tiles de cada lado de um chunk.
+     * @param keepMargin Quantidade de chunks mantidos em memória em volta
+     * dos chunks visíveis.
+     */
+    public TileChunkCache( TileMap tileMap, int chunkTiles, int keepMargin ) {
+        
+        this.tileMap = tileMap;
+        this.chunkTiles = chunkTiles;
+        this.keepMargin = keepMargin;
+        this.chunkPixels = chunkTiles * tileMap.getTileSize();
+        
+        chunkColumns = ( tileMap.getColumns() + chunkTiles - 1 ) / chunkTiles;
+        chunkLines = ( tileMap.getLines() + chunkTiles - 1 ) / chunkTiles;
+        images = new Image[chunkColumns * chunkLines];
+        dirty = new boolean[chunkColumns * chunkLines];
+        cached = new int[chunkColumns * chunkLines];
+        spare = new Image[chunkColumns * chunkLines];
+        spareRetired = new long[chunkColumns * chunkLines];
+        pixels = new int[(int) chunkPixels * (int) chunkPixels];
+        
+        tileMap.setChunkCache( this );
+        
+    }
+    
+    /**
+     * Marca como sujo o chunk que contém o tile.
+     */
+    public void invalidate( int column, int line ) {
+        dirty[( line / chunkTiles ) * chunkColumns + column / chunkTiles] = true;
+    }
+    
+    /**
+     * Pré-desenha os chunks que intersectam a área e os da margem em volta
+     * dela, usado no carregamento.
+     */
+    public void prepare( double x, double y, double width, double height ) {
+        refresh( x, y, width, height );
+        while ( prebake( x, y, width, height ) ) {
+        }
+    }
+    
+    /**
+     * Informa o frame que está sendo desenhado e o mais antigo que ainda
+     * pode ser desenhado a partir de uma DrawList (veja DrawPipeline). Sem
+     * essa informação, as imagens são reaproveitadas imediatamente, como
+     * convém ao desenho direto na janela.
+     */
+    public void setFrame( long frame, long oldestFrameInUse ) {
+        this.frame = frame;
+        this.oldestFrameInUse = oldestFrameInUse;
+    }
+    
+    /**
+     * Refaz os chunks visíveis que faltam ou estão sujos, descarta os que
+     * saíram da margem e pré-desenha um chunk da margem. Deve ser chamado
+     * na thread que altera o mapa (veja invalidate), antes de draw.
+     */
+    public void update( double x, double y, double width, double height ) {
+        refresh( x, y, width, height );
+        prebake( x, y, width, height );
+    }
+    
+    /**
+     * Desenha os chunks que intersectam a área, como deixados pelo último
+     * update.
+     */
+    public void draw( DrawTarget e, double x, double y, double width, double height ) {
+        
+        int startColumn = Math.max( (int) Math.floor( x / chunkPixels ), 0 );
+        int endColumn = Math.min( (int) Math.floor( ( x + width ) / chunkPixels ), chunkColumns - 1 );
+        int startLine = Math.max( (int) Math.floor( y / chunkPixels ), 0 );
+        int endLine = Math.min( (int) Math.floor( ( y + height ) / chunkPixels ), chunkLines - 1 );
+        
+        for ( int line = startLine; line <= endLine; line++ ) {
+            for ( int column = startColumn; column <= endColumn; column++ ) {
+                Image image = images[line * chunkColumns + column];
+                if ( image != null ) {
+                    e.drawImage( image, column * chunkPixels, line * chunkPixels );
+                }
+            }
+        }
+        
+    }
+    
+    public int getCachedCount() {
+        return cachedCount;
+    }
+    
+    private void refresh( double x, double y, double width, double height ) {
+        
+        int startColumn = Math.max( (int) Math.floor( x / chunkPixels ), 0 );
+        int endColumn = Math.min( (int) Math.floor( ( x + width ) / chunkPixels ), chunkColumns - 1 );
+        int startLine = Math.max( (int) Math.floor( y / chunkPixels ), 0 );
+        int endLine = Math.min( (int) Math.floor( ( y + height ) / chunkPixels ), chunkLines - 1 );
+        
+        // descarta os chunks fora da margem
+        for ( int i = cachedCount - 1; i >= 0; i-- ) {
+            int index = cached[i];
+            int column = index % chunkColumns;
+            int line = index / chunkColumns;
+            if ( column < startColumn - keepMargin || column > endColumn + keepMargin ||
+                 line < startLine - keepMargin || line > endLine + keepMargin ) {
+                retire( images[index] );
+                images[index] = null;
+                cached[i] = cached[--cachedCount];
+            }
+        }
+        
+        for ( int line = startLine; line <= endLine; line++ ) {
+            for ( int column = startColumn; column <= endColumn; column++ ) {
+                int index = line * chunkColumns + column;
+                if ( images[index] == null ) {
+                    images[index] = bake( column, line, null );
+                    cached[cachedCount++] = index;
+                    dirty[index] = false;
+                } else if ( dirty[index] ) {
+                    Image image = images[index];
+                    // ainda em uma lista de desenho: redesenha em outra imagem
+                    if ( oldestFrameInUse < frame ) {
+                        retire( image );
+                        image = null;
+                    }
+                    images[index] = bake( column, line, image );
+                    dirty[index] = false;
+                }
+            }
+        }
+        
+    }
+    
+    /**
+     * Desenha um chunk da margem em volta da área que ainda não existe, o
+     * mais próximo da área visível primeiro.
+     * 
+     * @return false se todos os chunks da margem já existem.
+     */
+    private boolean prebake( double x, double y, double width, double height ) {
+        
+        int startColumn = Math.max( (int) Math.floor( x / chunkPixels ), 0 );
+        int endColumn = Math.min( (int) Math.floor( ( x + width ) / chunkPixels ), chunkColumns - 1 );
+        int startLine = Math.max( (int) Math.floor( y / chunkPixels ), 0 );
+        int endLine = Math.min( (int) Math.floor( ( y + height ) / chunkPixels ), chunkLines - 1 );
+        
+        // anéis cada vez mais distantes da área visível
+        for ( int ring = 1; ring <= keepMargin; ring++ ) {
+            
+            int firstLine = Math.max( startLine - ring, 0 );
+            int lastLine = Math.min( endLine + ring, chunkLines - 1 );
+            int firstColumn = Math.max( startColumn - ring, 0 );
+            int lastColumn = Math.min( endColumn + ring, chunkColumns - 1 );
+            
+            for ( int line = firstLine; line <= lastLine; line++ ) {
+                
+                boolean edgeLine = line == startLine - ring || line == endLine + ring;
+                
+                for ( int column = firstColumn; column <= lastColumn; column++ ) {
+                    
+                    if ( !edgeLine && column != startColumn - ring && column != endColumn + ring ) {
+                        continue;
+                    }
+                    
+                    int index = line * chunkColumns + column;
+                    if ( images[index] == null ) {
+                        images[index] = bake( column, line, null );
+                        cached[cachedCount++] = index;
+                        dirty[index] = false;
+                        return true;
+                    }
+                    
+                }
+                
+            }
+            
+        }
+        
+        return false;
+        
+    }
+    
+    /**
+     * Desenha o chunk em image, se dada, em uma imagem descartada de mesmo
+     * tamanho ou, na falta dela, em uma imagem nova.
+     */
+    private Image bake( int chunkColumn, int chunkLine, Image image ) {
+        
+        int firstColumn = chunkColumn * chunkTiles;
+        int firstLine = chunkLine * chunkTiles;
+        int columns = Math.min( chunkTiles, tileMap.getColumns() - firstColumn );
+        int lines = Math.min( chunkTiles, tileMap.getLines() - firstLine );
+        double tileSize = tileMap.getTileSize();
+        int width = (int) ( columns * tileSize );
+        int height = (int) ( lines * tileSize );
+        
+        if ( image == null ) {
+            image = obtainImage( width, height );
+        }
+        
+        Arrays.fill( pixels, 0, width * height, 0 );
+        
+        for ( int line = firstLine; line < firstLine + lines; line++ ) {
+            for ( int column = firstColumn; column < firstColumn + columns; column++ ) {
+                Block b = tileMap.getBlock( column, line );
+                if ( b != null ) {
+                    copy( b, (int) ( b.rect.x - firstColumn * tileSize ), (int) ( b.rect.y - firstLine * tileSize ), width, height );
+                }
+            }
+        }
+        
+        image.buffImage.getRaster().setDataElements( 0, 0, width, height, pixels );
+        
+        return image;
+        
+    }
+    
+    /**
+     * Copia os pixels do sprite do bloco para o buffer do chunk, com o
+     * canto superior esquerdo em (x, y), cortando o que sair do chunk.
+     */
+    private void copy( Block b, int x, int y, int width, int height ) {
+        
+        int[] source = b.sprite.getPixels();
+        int spriteWidth = (int) b.sprite.getWidth();
+        int spriteHeight = (int) b.sprite.getHeight();
+        
+        int fromX = Math.max( -x, 0 );
+        int toX = Math.min( spriteWidth, width - x );
+        int fromY = Math.max( -y, 0 );
+        int toY = Math.min( spriteHeight, height - y );
+        
+        for ( int sy = fromY; sy < toY; sy++ ) {
+            System.arraycopy( source, sy * spriteWidth + fromX, pixels, ( y + sy ) * width + x + fromX, toX - fromX );
+        }
+        
+    }
+    
+    private void retire( Image image ) {
+        if ( spareCount == spare.length ) {
+            spare = Arrays.copyOf( spare, spareCount * 2 );
+            spareRetired = Arrays.copyOf( spareRetired, spareCount * 2 );
+        }
+        spare[spareCount] = image;
+        spareRetired[spareCount] = frame;
+        spareCount++;
+    }
+    
+    private Image obtainImage( int width, int height ) {
+        for ( int i = spareCount - 1; i >= 0; i-- ) {
+            Image image = spare[i];
+            if ( image.getWidth() == width && image.getHeight() == height && spareRetired[i] <= oldestFrameInUse ) {
+                spareCount--;
+                spare[i] = spare[spareCount];
+                spareRetired[i] = spareRetired[spareCount];
+                spare[spareCount] = null;
+                return image;
+            }
+        }
+        return new Image( width, height );
+    }
+    
+}
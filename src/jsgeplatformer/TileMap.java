@@ -0,0 +1,158 @@
+package jsgeplatformer;
+
+/**
+ * Grade de tiles sólidos, indexada por linha e coluna.
+ *
+ * As colunas são agrupadas em pedaços de chunkColumns colunas, e só os
+ * pedaços que têm algum tile ocupam memória. Assim um mundo carregado por
+ * partes gasta memória proporcional às partes carregadas, e não ao tamanho
+ * da fase.
+ *
+ * @author Prof. Dr. David Buzatto
+ */
+public class TileMap {
+
+    private int columns;
+    private int lines;
+    private double tileSize;
+    private int chunkColumns;
+    private Block[][] chunks;
+    private TileChunkCache chunkCache;
+    
+    // pedaços liberados, reaproveitados pelos próximos
+    private Block[][] spareChunks = new Block[8][];
+    private int spareCount;
+
+    public TileMap( int columns, int lines, double tileSize ) {
+        this( columns, lines, tileSize, Math.max( columns, 1 ) );
+    }
+
+    public TileMap( int columns, int lines, double tileSize, int chunkColumns ) {
+        this.columns = columns;
+        this.lines = lines;
+        this.tileSize = tileSize;
+        this.chunkColumns = chunkColumns;
+        this.chunks = new Block[( columns + chunkColumns - 1 ) / chunkColumns][];
+    }
+
+    public void setBlock( int column, int line, Block block ) {
+        
+        Block[] chunk = chunks[column / chunkColumns];
+        
+        if ( chunk == null ) {
+            if ( block == null ) {
+                return;
+            }
+            chunk = spareCount > 0 ? spareChunks[--spareCount] : new Block[chunkColumns * lines];
+            chunks[column / chunkColumns] = chunk;
+        }
+        
+        chunk[line * chunkColumns + column % chunkColumns] = block;
+        
+        if ( chunkCache != null ) {
+            chunkCache.invalidate( column, line );
+        }
+        
+    }
+
+    public Block getBlock( int column, int line ) {
+        if ( column < 0 || column >= columns || line < 0 || line >= lines ) {
+            return null;
+        }
+        Block[] chunk = chunks[column / chunkColumns];
+        return chunk == null ? null : chunk[line * chunkColumns + column % chunkColumns];
+    }
+    
+    /**
+     * Libera a memória de um pedaço cujos tiles já foram todos removidos.
+     */
+    public void releaseChunk( int chunkIndex ) {
+        
+        Block[] chunk = chunks[chunkIndex];
+        
+        if ( chunk == null ) {
+            return;
+        }
+        
+        for ( Block b : chunk ) {
+            if ( b != null ) {
+                throw new IllegalStateException( "chunk " + chunkIndex + " still has blocks" );
+            }
+        }
+        
+        chunks[chunkIndex] = null;
+        if ( spareCount < spareChunks.length ) {
+            spareChunks[spareCount++] = chunk;
+        }
+        
+    }
+
+    public int getColumn( double x ) {
+        return (int) Math.floor( x / tileSize );
+    }
+
+    public int getLine( double y ) {
+        return (int) Math.floor( y / tileSize );
+    }
+
+    /**
+     * Coleta, em ordem de linha e coluna, os tiles sólidos cujas células
+     * intersectam o retângulo dado. O custo depende apenas do tamanho do
+     * retângulo, nunca do tamanho do mapa.
+     *
+     * @return A quantidade de tiles armazenados em out.
+     */
+    public int query( double x, double y, double width, double height, Block[] out ) {
+
+        int startColumn = Math.max( getColumn( x ), 0 );
+        int endColumn = Math.min( getColumn( x + width ), columns - 1 );
+        int startLine = Math.max( getLine( y ), 0 );
+        int endLine = Math.min( getLine( y + height ), lines - 1 );
+
+        int count = 0;
+
+        for ( int line = startLine; line <= endLine; line++ ) {
+            int base = line * chunkColumns;
+            for ( int column = startColumn; column <= endColumn; column++ ) {
+                Block[] chunk = chunks[column / chunkColumns];
+                if ( chunk != null ) {
+                    Block b = chunk[base + column % chunkColumns];
+                    if ( b != null ) {
+                        if ( count < out.length ) {
+                            out[count] = b;
+                        }
+                        count++;
+                    }
+                }
+            }
+        }
+
+        return count;
+
+    }
+
+    public void setChunkCache( TileChunkCache chunkCache ) {
+        this.chunkCache = chunkCache;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getLines() {
+        return lines;
+    }
+
+    public int getChunkColumns() {
+        return chunkColumns;
+    }
+
+    public int getChunkCount() {
+        return chunks.length;
+    }
+
+    public double getTileSize() {
+        return tileSize;
+    }
+
+}
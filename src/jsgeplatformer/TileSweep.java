@@ -0,0 +1,120 @@
+package jsgeplatformer;
+
+import br.com.davidbuzatto.jsge.geom.Rectangle;
+
+/**
+ * Teste de colisão contínuo de uma caixa em movimento contra os tiles.
+ *
+ * Em vez de testar só a posição final, calcula o instante do primeiro
+ * contato ao longo do deslocamento (entre 0 e 1) e a normal da face
+ * atingida, então uma caixa rápida não atravessa os tiles. As faces
+ * internas, encostadas em outro tile, são ignoradas, para que quem
+ * desliza sobre um chão de vários tiles não tropece nas emendas. Caixas
+ * que já começam sobrepostas a um tile ficam para as sondas de colisão.
+ *
+ * @author Prof. Dr. David Buzatto
+ */
+public class TileSweep {
+
+    // resultado do último teste
+    public double time;
+    public double normalX;
+    public double normalY;
+    public Block block;
+
+    /**
+     * Move a caixa (x e y no canto superior esquerdo) por (dx, dy) e
+     * procura o primeiro tile atingido.
+     *
+     * @return Se algum tile foi atingido. Nesse caso, time, normalX,
+     * normalY e block descrevem o contato.
+     */
+    public boolean sweep( TileMap tileMap, double x, double y, double width, double height, double dx, double dy ) {
+
+        time = 1;
+        normalX = 0;
+        normalY = 0;
+        block = null;
+
+        int startColumn = Math.max( tileMap.getColumn( Math.min( x, x + dx ) ), 0 );
+        int endColumn = Math.min( tileMap.getColumn( Math.max( x, x + dx ) + width ), tileMap.getColumns() - 1 );
+        int startLine = Math.max( tileMap.getLine( Math.min( y, y + dy ) ), 0 );
+        int endLine = Math.min( tileMap.getLine( Math.max( y, y + dy ) + height ), tileMap.getLines() - 1 );
+
+        for ( int line = startLine; line <= endLine; line++ ) {
+            for ( int column = startColumn; column <= endColumn; column++ ) {
+                Block b = tileMap.getBlock( column, line );
+                if ( b != null ) {
+                    test( tileMap, b, column, line, x, y, width, height, dx, dy );
+                }
+            }
+        }
+
+        return block != null;
+
+    }
+
+    private void test( TileMap tileMap, Block b, int column, int line,
+                       double x, double y, double width, double height, double dx, double dy ) {
+
+        Rectangle r = b.rect;
+
+        double entryX;
+        double exitX;
+        if ( dx > 0 ) {
+            entryX = ( r.x - ( x + width ) ) / dx;
+            exitX = ( r.x + r.width - x ) / dx;
+        } else if ( dx < 0 ) {
+            entryX = ( r.x + r.width - x ) / dx;
+            exitX = ( r.x - ( x + width ) ) / dx;
+        } else if ( x < r.x + r.width && x + width > r.x ) {
+            entryX = Double.NEGATIVE_INFINITY;
+            exitX = Double.POSITIVE_INFINITY;
+        } else {
+            return;
+        }
+
+        double entryY;
+        double exitY;
+        if ( dy > 0 ) {
+            entryY = ( r.y - ( y + height ) ) / dy;
+            exitY = ( r.y + r.height - y ) / dy;
+        } else if ( dy < 0 ) {
+            entryY = ( r.y + r.height - y ) / dy;
+            exitY = ( r.y - ( y + height ) ) / dy;
+        } else if ( y < r.y + r.height && y + height > r.y ) {
+            entryY = Double.NEGATIVE_INFINITY;
+            exitY = Double.POSITIVE_INFINITY;
+        } else {
+            return;
+        }
+
+        double entry = Math.max( entryX, entryY );
+        double exit = Math.min( exitX, exitY );
+
+        // sem contato, já sobreposto no início ou contato depois de um contato anterior
+        if ( entry >= exit || entry < 0 || entry > 1 || entry >= time && block != null ) {
+            return;
+        }
+
+        double nx = 0;
+        double ny = 0;
+        if ( entryX > entryY ) {
+            nx = dx > 0 ? -1 : 1;
+        } else {
+            ny = dy > 0 ? -1 : 1;
+        }
+
+        // face encostada em outro tile: não pode ser atingida
+        if ( tileMap.getBlock( column + (int) nx, line + (int) ny ) != null ) {
+            return;
+        }
+
+        time = entry;
+        normalX = nx;
+        normalY = ny;
+        block = b;
+
+    }
+
+}
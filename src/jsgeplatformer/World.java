@@ -0,0 +1,1043 @@
+package jsgeplatformer;
+
+import br.com.davidbuzatto.jsge.core.Camera2D;
+import br.com.davidbuzatto.jsge.geom.Rectangle;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Estado do mundo do jogo e sua lógica de atualização.
+ * 
+ * Não depende da janela da engine, podendo ser executado sem interface
+ * gráfica e sem áudio (sons nulos).
+ * 
+ * @author Prof. Dr. David Buzatto
+ */
+public class World {
+    
+    public static final double GRAVITY = 1200;
+    public static final double MAX_FALL_SPEED = 400;
+    public static final double SPRITE_WIDTH = 32;
+    
+    /*
+     * Maior deslocamento por passo, em cada eixo, que as sondas de colisão
+     * resolvem corretamente; deslocamentos maiores são varridos antes.
+     */
+    public static final double MAX_PROBE_STEP = 8;
+    
+    private Player player;
+    private TileMap tileMap;
+    private Block[] nearbyBlocks = new Block[64];
+    private Map<Character, Sprite> tileSprites;
+    private Level level;
+    
+    // blocos dos chunks descarregados, reaproveitados ao carregar outros
+    private Block[] blockPool = new Block[64];
+    private int blockPoolSize;
+    
+    /*
+     * O mundo é carregado em chunks de CHUNK_COLUMNS colunas, apenas os
+     * próximos do alvo da câmera. Dos chunks descarregados ficam as moedas
+     * coletadas e os inimigos mortos (removedEntities), os inimigos já
+     * criados (spawnedEntities) e os inimigos vivos (parkedEnemies).
+     */
+    public static final int CHUNK_COLUMNS = 32;
+    private double streamingDistance;
+    private int loadedFrom;
+    private int loadedTo = -1;
+    private int[] chunkEntityStart = new int[0];
+    private int[] chunkEntities = new int[0];
+    private BitSet removedEntities = new BitSet();
+    private BitSet spawnedEntities = new BitSet();
+    private EnemyStore parkedEnemies;
+    
+    private CoinStore coins;
+    private EnemyStore enemies;
+    private SweepAndPrune broadphase = new SweepAndPrune();
+    
+    /*
+     * Apenas os inimigos perto da câmera são simulados: os das posições
+     * [activeFrom, activeTo) da ordem do broadphase.
+     */
+    private double activationMargin = 4 * SPRITE_WIDTH;
+    private int activeFrom;
+    private int activeTo;
+    
+    /*
+     * No modo paralelo, a atualização dos inimigos e a colisão deles com os
+     * tiles são divididas no pool fork/join, com o mesmo resultado do modo
+     * serial. As tarefas e seus buffers são reaproveitados de um passo para o
+     * outro (não há ThreadLocal: o pool comum os apaga a cada tarefa).
+     */
+    private static final int PARALLEL_THRESHOLD = 512;
+    private static final int PARALLEL_BATCH = 128;
+    private boolean parallel;
+    private EnemyBatch[] batches = new EnemyBatch[0];
+    private int batchCount;
+    private EnemyPass enemyPass = new EnemyPass();
+    private TileSweep sweep = new TileSweep();
+    
+    // desligado até que um seja definido
+    private FrameProfiler profiler = new FrameProfiler( 1 );
+    
+    // relógio do mundo, usado nas animações das moedas e dos inimigos
+    private double time;
+    
+    private Camera2D camera;
+    private double viewWidth;
+    private double viewHeight;
+    private double worldWidth;
+    private double worldHeight;
+
+    public World( Player player, Map<Character, Sprite> tileSprites,
+                  Animation baseCoinAnimation, SoundEffect coinSound,
+                  Animation enemyWalkRight, Animation enemyWalkLeft, SoundEffect kickSound,
+                  double viewWidth, double viewHeight ) {
+        
+        this.player = player;
+        this.tileSprites = tileSprites;
+        this.coins = new CoinStore( 24, 32, baseCoinAnimation, coinSound );
+        this.enemies = new EnemyStore( SPRITE_WIDTH, SPRITE_WIDTH, 150, enemyWalkRight, enemyWalkLeft, kickSound );
+        this.parkedEnemies = new EnemyStore( SPRITE_WIDTH, SPRITE_WIDTH, 150, enemyWalkRight, enemyWalkLeft, kickSound );
+        this.streamingDistance = viewWidth;
+        this.viewWidth = viewWidth;
+        this.viewHeight = viewHeight;
+        
+        camera = new Camera2D();
+        camera.offset.x = viewWidth / 2;
+        camera.offset.y = viewHeight / 2;
+        
+    }
+    
+    /**
+     * Avança a simulação em um passo de delta segundos.
+     */
+    public void step( double delta ) {
+        
+        profiler.begin( FrameProfiler.PLAYER );
+        player.saveState();
+        player.update( delta );
+        profiler.end( FrameProfiler.PLAYER );
+        
+        time += delta;
+        coins.setTime( time );
+        enemies.setTime( time );
+        
+        profiler.begin( FrameProfiler.STREAMING );
+        updateStreaming();
+        broadphase.sync( enemies );
+        updateActiveRange();
+        profiler.end( FrameProfiler.STREAMING );
+        
+        profiler.begin( FrameProfiler.ENEMIES );
+        if ( isParallelPass() ) {
+            runParallelPass( delta, false );
+        } else {
+            updateEnemies( activeFrom, activeTo, delta );
+        }
+        profiler.end( FrameProfiler.ENEMIES );
+        
+        resolveCollisions();
+        
+        profiler.begin( FrameProfiler.REMOVAL );
+        removeDeadEntities();
+        profiler.end( FrameProfiler.REMOVAL );
+        
+    }
+    
+    public void resolveCollisions() {
+        
+        profiler.begin( FrameProfiler.PLAYER_BLOCKS );
+        resolveCollisionPlayerBlocks();
+        profiler.end( FrameProfiler.PLAYER_BLOCKS );
+        
+        profiler.begin( FrameProfiler.PLAYER_COINS );
+        resolveCollisionPlayerCoins();
+        profiler.end( FrameProfiler.PLAYER_COINS );
+        
+        // a reordenação é contada aqui, pois são os inimigos que desordenam o broadphase
+        profiler.begin( FrameProfiler.ENEMIES_BLOCKS );
+        resolveCollisionEnemiesBlocks();
+        broadphase.sort( enemies, activeFrom, activeTo );
+        updateActiveRange();
+        profiler.end( FrameProfiler.ENEMIES_BLOCKS );
+        
+        profiler.begin( FrameProfiler.PLAYER_ENEMIES );
+        resolveCollisionPlayerEnemies();
+        profiler.end( FrameProfiler.PLAYER_ENEMIES );
+        
+        profiler.begin( FrameProfiler.ENEMIES_ENEMIES );
+        resolveCollisionEnemiesEnemies();
+        profiler.end( FrameProfiler.ENEMIES_ENEMIES );
+        
+    }
+    
+    /**
+     * Remove as entidades marcadas durante as colisões, do maior índice
+     * para o menor.
+     */
+    private void removeDeadEntities() {
+        
+        int[] removed = enemies.removed;
+        int count = enemies.removedCount;
+        
+        Arrays.sort( removed, 0, count );
+        for ( int k = count - 1; k >= 0; k-- ) {
+            markRemoved( enemies.id[removed[k]] );
+            broadphase.remove( enemies, removed[k] );
+            enemies.remove( removed[k] );
+        }
+        enemies.removedCount = 0;
+        
+        for ( int k = 0; k < coins.removedCount; k++ ) {
+            markRemoved( coins.id[coins.removed[k]] );
+        }
+        coins.compact();
+        
+        if ( count > 0 ) {
+            broadphase.sync( enemies );
+            updateActiveRange();
+        }
+        
+    }
+    
+    private void markRemoved( int entity ) {
+        if ( entity >= 0 ) {
+            removedEntities.set( entity );
+        }
+    }
+    
+    /**
+     * Adiciona um inimigo com a posição (x, y) como canto superior esquerdo
+     * da sua célula, reaproveitando o espaço dos inimigos removidos.
+     */
+    public void spawnEnemy( double x, double y ) {
+        enemies.add( x, y );
+        broadphase.add( enemies, enemies.size - 1 );
+        updateActiveRange();
+    }
+    
+    private void updateActiveRange() {
+        double minX = camera.target.x - camera.offset.x / camera.zoom - activationMargin;
+        double maxX = minX + viewWidth / camera.zoom + activationMargin * 2;
+        activeFrom = broadphase.lowerBound( enemies, minX );
+        activeTo = broadphase.upperBound( enemies, maxX );
+    }
+    
+    private void resolveCollisionPlayerBlocks() {
+        
+        sweepPlayer();
+        
+        int count = queryNearbyBlocks( player.rect.x, player.rect.y, player.rect.width, player.rect.height, nearbyBlocks );
+        if ( count > nearbyBlocks.length ) {
+            nearbyBlocks = new Block[count * 2];
+            count = queryNearbyBlocks( player.rect.x, player.rect.y, player.rect.width, player.rect.height, nearbyBlocks );
+        }
+        
+        for ( int i = 0; i < count; i++ ) {
+            
+            Block b = nearbyBlocks[i];
+            Player.CollisionType ct = player.checkCollision( b );
+            
+            switch ( ct ) {
+                case LEFT:
+                    player.rect.x = b.rect.x + b.rect.width + player.rect.width / 2;
+                    break;
+                case RIGHT:
+                    player.rect.x = b.rect.x - player.rect.width / 2;
+                    break;
+                case UP:
+                    player.rect.y = b.rect.y + b.rect.height + player.rect.height / 2;
+                    player.vel.y = 0;
+                    break;
+                case DOWN:
+                    player.rect.y = b.rect.y - player.rect.height / 2;
+                    player.setOnGround();
+                    break;
+            }
+            
+            player.updateCollisionProbes();
+            
+        }
+        
+    }
+    
+    private void resolveCollisionPlayerEnemies() {
+        
+        // a caixa do inimigo testada pelo jogador começa no centro do inimigo
+        int count = broadphase.query( 
+            enemies, 
+            player.rect.x - player.rect.width / 2 - enemies.width, 
+            player.rect.x + player.rect.width / 2
+        );
+        int[] candidates = broadphase.getResult();
+        
+        for ( int k = 0; k < count; k++ ) {
+            
+            int i = candidates[k];
+            
+            if ( !enemies.dead[i] ) {
+                
+                Player.CollisionType ct = player.checkCollision( enemies.x[i], enemies.y[i], enemies.width, enemies.height );
+
+                switch ( ct ) {
+                    case LEFT:
+                        break;
+                    case RIGHT:
+                        break;
+                    case UP:
+                        break;
+                    case DOWN:
+                        player.rect.y = enemies.y[i] - enemies.height / 2 - player.rect.height / 2;
+                        player.jump( true );
+                        player.updateCollisionProbes();
+                        enemies.kill( i );
+                        break;
+                }
+                
+            }
+            
+        }
+        
+    }
+    
+    /**
+     * Inimigos que se encostam dão meia-volta, apenas os que andam em
+     * direção ao outro.
+     */
+    private void resolveCollisionEnemiesEnemies() {
+        
+        int[] order = broadphase.getOrder();
+        double width = enemies.width;
+        double height = enemies.height;
+        
+        for ( int p = activeFrom; p < activeTo; p++ ) {
+            
+            int a = order[p];
+            
+            if ( enemies.dead[a] ) {
+                continue;
+            }
+            
+            for ( int q = p + 1; q < activeTo && enemies.x[order[q]] - enemies.x[a] < width; q++ ) {
+                
+                int b = order[q];
+                
+                if ( !enemies.dead[b] && Math.abs( enemies.y[a] - enemies.y[b] ) < height ) {
+                    if ( enemies.direction[a] == EnemyStore.RIGHT ) {
+                        enemies.turn( a );
+                    }
+                    if ( enemies.direction[b] == EnemyStore.LEFT ) {
+                        enemies.turn( b );
+                    }
+                }
+                
+            }
+            
+        }
+        
+    }
+    
+    private void resolveCollisionEnemiesBlocks() {
+        if ( isParallelPass() ) {
+            runParallelPass( 0, true );
+        } else {
+            nearbyBlocks = resolveCollisionEnemiesBlocks( activeFrom, activeTo, nearbyBlocks, sweep );
+        }
+    }
+    
+    /**
+     * Divide as posições ativas em faixas de PARALLEL_BATCH inimigos e as
+     * processa no pool fork/join.
+     */
+    private void runParallelPass( double delta, boolean blocks ) {
+        
+        batchCount = ( activeTo - activeFrom + PARALLEL_BATCH - 1 ) / PARALLEL_BATCH;
+        if ( batchCount > batches.length ) {
+            int old = batches.length;
+            batches = Arrays.copyOf( batches, batchCount * 2 );
+            for ( int k = old; k < batches.length; k++ ) {
+                batches[k] = new EnemyBatch();
+            }
+        }
+        
+        for ( int k = 0; k < batchCount; k++ ) {
+            int from = activeFrom + k * PARALLEL_BATCH;
+            batches[k].set( from, Math.min( from + PARALLEL_BATCH, activeTo ), delta, blocks );
+        }
+        
+        enemyPass.reinitialize();
+        ForkJoinPool.commonPool().invoke( enemyPass );
+        
+    }
+    
+    boolean isParallelPass() {
+        return parallel && activeTo - activeFrom >= PARALLEL_THRESHOLD;
+    }
+    
+    private void updateEnemies( int from, int to, double delta ) {
+        int[] order = broadphase.getOrder();
+        for ( int p = from; p < to; p++ ) {
+            int i = order[p];
+            enemies.saveState( i );
+            enemies.update( i, delta );
+        }
+    }
+    
+    /**
+     * Resolve a colisão com os tiles dos inimigos nas posições [from, to)
+     * da ordem do broadphase, usando blocks como buffer.
+     *
+     * @return O buffer, aumentado se alguma busca não coube nele.
+     */
+    private Block[] resolveCollisionEnemiesBlocks( int from, int to, Block[] blocks, TileSweep sweep ) {
+        
+        int[] order = broadphase.getOrder();
+        double width = enemies.width;
+        double height = enemies.height;
+        
+        for ( int p = from; p < to; p++ ) {
+            
+            int i = order[p];
+            sweepEnemy( i, sweep );
+            
+            int count = queryNearbyBlocks( enemies.x[i], enemies.y[i], width, height, blocks );
+            if ( count > blocks.length ) {
+                blocks = new Block[count * 2];
+                count = queryNearbyBlocks( enemies.x[i], enemies.y[i], width, height, blocks );
+            }
+            
+            for ( int k = 0; k < count; k++ ) {
+
+                Rectangle b = blocks[k].rect;
+                EnemyStore.CollisionType ct = enemies.checkCollision( i, b );
+
+                switch ( ct ) {
+                    case LEFT:
+                        enemies.x[i] = b.x + b.width + width / 2;
+                        enemies.turn( i );
+                        break;
+                    case RIGHT:
+                        enemies.x[i] = b.x - width / 2;
+                        enemies.turn( i );
+                        break;
+                    case UP:
+                        enemies.y[i] = b.y + b.height + height / 2;
+                        enemies.velY[i] = 0;
+                        break;
+                    case DOWN:
+                        enemies.y[i] = b.y - height / 2;
+                        enemies.setOnGround( i );
+                        break;
+                }
+
+            }
+            
+        }
+        
+        return blocks;
+        
+    }
+    
+    /**
+     * Deslocamentos maiores que MAX_PROBE_STEP são refeitos com um teste
+     * contínuo contra os tiles: a entidade para no primeiro contato e
+     * desliza pela superfície com o resto do movimento.
+     */
+    private void sweepPlayer() {
+        
+        double width = player.rect.width;
+        double height = player.rect.height;
+        double x = player.getLastX();
+        double y = player.getLastY();
+        double dx = player.rect.x - x;
+        double dy = player.rect.y - y;
+        
+        if ( Math.abs( dx ) <= MAX_PROBE_STEP && Math.abs( dy ) <= MAX_PROBE_STEP ) {
+            return;
+        }
+        
+        for ( int k = 0; k < 3 && ( dx != 0 || dy != 0 ); k++ ) {
+            
+            if ( !sweep.sweep( tileMap, x - width / 2, y - height / 2, width, height, dx, dy ) ) {
+                x += dx;
+                y += dy;
+                break;
+            }
+            
+            Rectangle b = sweep.block.rect;
+            double t = sweep.time;
+            
+            if ( sweep.normalX != 0 ) {
+                x = sweep.normalX < 0 ? b.x - width / 2 : b.x + b.width + width / 2;
+                y += dy * t;
+                dx = 0;
+                dy *= 1 - t;
+            } else {
+                y = sweep.normalY < 0 ? b.y - height / 2 : b.y + b.height + height / 2;
+                x += dx * t;
+                dx *= 1 - t;
+                dy = 0;
+                if ( sweep.normalY < 0 ) {
+                    player.setOnGround();
+                } else {
+                    player.vel.y = 0;
+                }
+            }
+            
+        }
+        
+        player.moveTo( x, y );
+        
+    }
+    
+    private void sweepEnemy( int i, TileSweep sweep ) {
+        
+        double width = enemies.width;
+        double height = enemies.height;
+        double x = enemies.lastX[i];
+        double y = enemies.lastY[i];
+        double dx = enemies.x[i] - x;
+        double dy = enemies.y[i] - y;
+        
+        if ( Math.abs( dx ) <= MAX_PROBE_STEP && Math.abs( dy ) <= MAX_PROBE_STEP ) {
+            return;
+        }
+        
+        for ( int k = 0; k < 3 && ( dx != 0 || dy != 0 ); k++ ) {
+            
+            if ( !sweep.sweep( tileMap, x - width / 2, y - height / 2, width, height, dx, dy ) ) {
+                x += dx;
+                y += dy;
+                break;
+            }
+            
+            Rectangle b = sweep.block.rect;
+            double t = sweep.time;
+            
+            if ( sweep.normalX != 0 ) {
+                x = sweep.normalX < 0 ? b.x - width / 2 : b.x + b.width + width / 2;
+                y += dy * t;
+                dx = 0;
+                dy *= 1 - t;
+                enemies.turn( i );
+            } else {
+                y = sweep.normalY < 0 ? b.y - height / 2 : b.y + b.height + height / 2;
+                x += dx * t;
+                dx *= 1 - t;
+                dy = 0;
+                if ( sweep.normalY < 0 ) {
+                    enemies.setOnGround( i );
+                } else {
+                    enemies.velY[i] = 0;
+                }
+            }
+            
+        }
+        
+        enemies.x[i] = x;
+        enemies.y[i] = y;
+        enemies.prevY[i] = y;
+        
+    }
+    
+    /**
+     * Coleta os tiles em volta de uma entidade centrada em (x, y), com um
+     * tile de folga de cada lado.
+     */
+    private int queryNearbyBlocks( double x, double y, double width, double height, Block[] out ) {
+        return tileMap.query(
+            x - width / 2 - SPRITE_WIDTH,
+            y - height / 2 - SPRITE_WIDTH,
+            width + SPRITE_WIDTH * 2,
+            height + SPRITE_WIDTH * 2,
+            out
+        );
+    }
+    
+    /**
+     * Faixa de posições da ordem do broadphase processada por uma thread,
+     * com seus próprios buffers de colisão.
+     */
+    private class EnemyBatch extends RecursiveAction {
+        
+        private static final long serialVersionUID = 1L;
+        
+        private Block[] blockBuffer = new Block[64];
+        private TileSweep batchSweep = new TileSweep();
+        private int from;
+        private int to;
+        private double delta;
+        private boolean blocks;
+        
+        void set( int from, int to, double delta, boolean blocks ) {
+            reinitialize();
+            this.from = from;
+            this.to = to;
+            this.delta = delta;
+            this.blocks = blocks;
+        }
+        
+        @Override
+        protected void compute() {
+            if ( blocks ) {
+                blockBuffer = resolveCollisionEnemiesBlocks( from, to, blockBuffer, batchSweep );
+            } else {
+                updateEnemies( from, to, delta );
+            }
+        }
+        
+    }
+    
+    /**
+     * Distribui as faixas preparadas por runParallelPass e espera por elas.
+     */
+    private class EnemyPass extends RecursiveAction {
+        
+        private static final long serialVersionUID = 1L;
+        
+        @Override
+        protected void compute() {
+            for ( int k = batchCount - 1; k > 0; k-- ) {
+                batches[k].fork();
+            }
+            batches[0].compute();
+            for ( int k = 1; k < batchCount; k++ ) {
+                batches[k].join();
+            }
+        }
+        
+    }
+    
+    private void resolveCollisionPlayerCoins() {
+        
+        for ( int i = 0; i < coins.size; i++ ) {
+            if ( !coins.collected[i] ) {
+                if ( player.checkOverlap( coins.x[i], coins.y[i], coins.width, coins.height ) ) {
+                    coins.collect( i );
+                }
+            }
+        }
+        
+    }
+    
+    /**
+     * Resumo do estado do mundo (relógio, jogador, inimigos e entidades
+     * removidas), usado para verificar se um replay reproduz a partida
+     * gravada. Estados iguais sempre têm o mesmo checksum.
+     */
+    public long checksum() {
+        
+        long h = mix( 17, time );
+        h = mix( h, player.rect.x );
+        h = mix( h, player.rect.y );
+        h = mix( h, player.vel.x );
+        h = mix( h, player.vel.y );
+        h = mix( checksum( h, enemies ), coins.size );
+        h = checksum( h, parkedEnemies );
+        
+        for ( int i = removedEntities.nextSetBit( 0 ); i >= 0; i = removedEntities.nextSetBit( i + 1 ) ) {
+            h = mix( h, i );
+        }
+        
+        return h;
+        
+    }
+    
+    private static long checksum( long h, EnemyStore store ) {
+        h = mix( h, store.size );
+        for ( int i = 0; i < store.size; i++ ) {
+            h = mix( h, store.x[i] );
+            h = mix( h, store.y[i] );
+            h = mix( h, store.velX[i] );
+            h = mix( h, store.velY[i] );
+            h = mix( h, store.direction[i] * 2 + ( store.dead[i] ? 1 : 0 ) );
+        }
+        return h;
+    }
+    
+    private static long mix( long h, double value ) {
+        return mix( h, Double.doubleToLongBits( value ) );
+    }
+    
+    private static long mix( long h, long value ) {
+        return ( h ^ value ) * 0x100000001B3L + ( h >>> 29 );
+    }
+    
+    /**
+     * Recarrega a última fase processada.
+     */
+    public void reload() {
+        load( level );
+    }
+    
+    public void processMap( String map ) {
+        load( LevelIO.parseText( map ) );
+    }
+    
+    public void load( Level level ) {
+
+        unloadChunks( loadedFrom, loadedTo );
+        loadedFrom = 0;
+        loadedTo = -1;
+        
+        this.level = level;
+        
+        time = 0;
+        coins.setTime( time );
+        enemies.setTime( time );
+        coins.clear();
+        enemies.clear();
+        broadphase.reset( enemies );
+        parkedEnemies.clear();
+        removedEntities.clear();
+        spawnedEntities.clear();
+
+        int columns = level.getColumns();
+        int lines = level.getLines();
+        
+        if ( tileMap == null || tileMap.getColumns() != columns || tileMap.getLines() != lines ) {
+            tileMap = new TileMap( columns, lines, SPRITE_WIDTH, CHUNK_COLUMNS );
+        }
+        
+        indexEntities();
+        
+        int enemyCount = 0;
+        
+        for ( int i = 0; i < level.getEntityCount(); i++ ) {
+            if ( level.getEntityType( i ) == 'P' ) {
+                player.reset( level.getEntityColumn( i ) * SPRITE_WIDTH, level.getEntityLine( i ) * SPRITE_WIDTH );
+            } else if ( level.getEntityType( i ) == 'e' ) {
+                enemyCount++;
+            }
+        }
+        
+        // todos os inimigos da fase cabem nos armazéns sem realocação
+        enemies.reserve( enemyCount );
+        parkedEnemies.reserve( enemyCount );
+        broadphase.reserve( enemyCount );
+        
+        worldWidth = columns * SPRITE_WIDTH;
+        worldHeight = lines * SPRITE_WIDTH;
+        
+        updateCamera( 1 );
+        updateStreaming();
+        
+        broadphase.reset( enemies );
+        updateActiveRange();
+
+    }
+    
+    /**
+     * Agrupa as entidades da fase por chunk, mantendo a ordem da fase.
+     */
+    private void indexEntities() {
+        
+        int chunkCount = tileMap.getChunkCount();
+        int entityCount = level.getEntityCount();
+        
+        if ( chunkEntityStart.length < chunkCount + 1 ) {
+            chunkEntityStart = new int[chunkCount + 1];
+        }
+        if ( chunkEntities.length < entityCount ) {
+            chunkEntities = new int[entityCount];
+        }
+        
+        Arrays.fill( chunkEntityStart, 0 );
+        for ( int i = 0; i < entityCount; i++ ) {
+            chunkEntityStart[level.getEntityColumn( i ) / CHUNK_COLUMNS + 1]++;
+        }
+        for ( int c = 0; c < chunkCount; c++ ) {
+            chunkEntityStart[c + 1] += chunkEntityStart[c];
+        }
+        
+        int[] next = Arrays.copyOf( chunkEntityStart, chunkCount );
+        for ( int i = 0; i < entityCount; i++ ) {
+            chunkEntities[next[level.getEntityColumn( i ) / CHUNK_COLUMNS]++] = i;
+        }
+        
+    }
+    
+    /**
+     * Carrega os chunks próximos do alvo da câmera e descarrega os demais.
+     */
+    private void updateStreaming() {
+        
+        double minDistance = viewWidth / camera.zoom / 2 + activationMargin + SPRITE_WIDTH * 2;
+        double distance = Math.max( streamingDistance, minDistance );
+        double chunkWidth = CHUNK_COLUMNS * SPRITE_WIDTH;
+        
+        int from = Math.max( (int) Math.floor( ( camera.target.x - distance ) / chunkWidth ), 0 );
+        int to = Math.min( (int) Math.floor( ( camera.target.x + distance ) / chunkWidth ), tileMap.getChunkCount() - 1 );
+        
+        if ( from == loadedFrom && to == loadedTo ) {
+            return;
+        }
+        
+        // descarrega antes, para que os inimigos sejam estacionados antes de o chunk voltar
+        if ( loadedFrom <= loadedTo ) {
+            unloadChunks( loadedFrom, Math.min( from - 1, loadedTo ) );
+            unloadChunks( Math.max( to + 1, loadedFrom ), loadedTo );
+        }
+        
+        for ( int c = from; c <= to; c++ ) {
+            if ( c < loadedFrom || c > loadedTo ) {
+                loadChunk( c );
+            }
+        }
+        
+        loadedFrom = from;
+        loadedTo = to;
+        
+    }
+    
+    private void loadChunk( int chunk ) {
+        
+        int firstColumn = chunk * CHUNK_COLUMNS;
+        int lastColumn = Math.min( firstColumn + CHUNK_COLUMNS, level.getColumns() ) - 1;
+        
+        for ( int line = 0; line < level.getLines(); line++ ) {
+            for ( int column = firstColumn; column <= lastColumn; column++ ) {
+                char c = level.getTile( column, line );
+                if ( c != Level.EMPTY ) {
+                    tileMap.setBlock( 
+                        column, line, 
+                        obtainBlock( column * SPRITE_WIDTH, line * SPRITE_WIDTH, tileSprites.get( c ) )
+                    );
+                }
+            }
+        }
+        
+        for ( int k = chunkEntityStart[chunk]; k < chunkEntityStart[chunk + 1]; k++ ) {
+            
+            int entity = chunkEntities[k];
+            double x = level.getEntityColumn( entity ) * SPRITE_WIDTH;
+            double y = level.getEntityLine( entity ) * SPRITE_WIDTH;
+            
+            switch ( level.getEntityType( entity ) ) {
+                case 'o':
+                    if ( !removedEntities.get( entity ) ) {
+                        // add pode aumentar os arrays, então id é lido depois
+                        int i = coins.add( x, y );
+                        coins.id[i] = entity;
+                    }
+                    break;
+                case 'e':
+                    if ( !spawnedEntities.get( entity ) ) {
+                        spawnedEntities.set( entity );
+                        int i = enemies.add( x, y );
+                        enemies.id[i] = entity;
+                        broadphase.add( enemies, i );
+                    }
+                    break;
+            }
+            
+        }
+        
+        for ( int i = parkedEnemies.size - 1; i >= 0; i-- ) {
+            if ( chunkOf( parkedEnemies.x[i] ) == chunk ) {
+                broadphase.add( enemies, parkedEnemies.copyTo( i, enemies ) );
+                parkedEnemies.remove( i );
+            }
+        }
+        
+    }
+    
+    /**
+     * Descarrega os chunks em [from, to]: os blocos voltam ao pool, as
+     * moedas são descartadas e os inimigos vivos ficam estacionados.
+     */
+    private void unloadChunks( int from, int to ) {
+        
+        if ( from > to || tileMap == null ) {
+            return;
+        }
+        
+        for ( int chunk = from; chunk <= to; chunk++ ) {
+            
+            int firstColumn = chunk * CHUNK_COLUMNS;
+            int lastColumn = Math.min( firstColumn + CHUNK_COLUMNS, tileMap.getColumns() ) - 1;
+            
+            for ( int line = 0; line < tileMap.getLines(); line++ ) {
+                for ( int column = firstColumn; column <= lastColumn; column++ ) {
+                    Block b = tileMap.getBlock( column, line );
+                    if ( b != null ) {
+                        if ( blockPoolSize == blockPool.length ) {
+                            blockPool = Arrays.copyOf( blockPool, blockPoolSize * 2 );
+                        }
+                        blockPool[blockPoolSize++] = b;
+                        tileMap.setBlock( column, line, null );
+                    }
+                }
+            }
+            
+            tileMap.releaseChunk( chunk );
+            
+        }
+        
+        for ( int i = coins.size - 1; i >= 0; i-- ) {
+            int chunk = chunkOf( coins.x[i] );
+            if ( chunk >= from && chunk <= to ) {
+                coins.remove( i );
+            }
+        }
+        
+        for ( int i = enemies.size - 1; i >= 0; i-- ) {
+            int chunk = chunkOf( enemies.x[i] );
+            if ( chunk >= from && chunk <= to ) {
+                if ( !enemies.dead[i] ) {
+                    enemies.copyTo( i, parkedEnemies );
+                }
+                broadphase.remove( enemies, i );
+                enemies.remove( i );
+            }
+        }
+        
+    }
+    
+    private int chunkOf( double x ) {
+        return (int) Math.floor( x / ( CHUNK_COLUMNS * SPRITE_WIDTH ) );
+    }
+    
+    private Block obtainBlock( double x, double y, Sprite sprite ) {
+        
+        if ( blockPoolSize == 0 ) {
+            return new Block( new Rectangle( x, y, SPRITE_WIDTH, SPRITE_WIDTH ), null, sprite );
+        }
+        
+        Block b = blockPool[--blockPoolSize];
+        blockPool[blockPoolSize] = null;
+        b.rect.x = x;
+        b.rect.y = y;
+        b.color = null;
+        b.sprite = sprite;
+        
+        return b;
+        
+    }
+    
+    /**
+     * Centraliza a câmera no jogador, interpolado por alpha, sem sair dos
+     * limites do mundo.
+     */
+    public void updateCamera( double alpha ) {
+        
+        double playerX = player.getInterpolatedX( alpha );
+        double playerY = player.getInterpolatedY( alpha );
+        
+        if ( playerX <= viewWidth / 2 ) {
+            camera.target.x = viewWidth / 2;
+        } else if ( playerX >= worldWidth - viewWidth / 2 ) {
+            camera.target.x = worldWidth - viewWidth / 2 ;
+        } else {
+            camera.target.x = playerX;
+        }
+        
+        if ( playerY <= viewHeight / 2 ) {
+            camera.target.y = viewHeight / 2;
+        } else if ( playerY >= worldHeight - viewHeight / 2 ) {
+            camera.target.y = worldHeight - viewHeight / 2 ;
+        } else {
+            camera.target.y = playerY;
+        }
+        
+    }
+    
+    public FrameProfiler getProfiler() {
+        return profiler;
+    }
+    
+    public void setProfiler( FrameProfiler profiler ) {
+        this.profiler = profiler;
+    }
+    
+    /**
+     * Troca os sons das moedas coletadas e dos inimigos mortos; null
+     * deixa sem som.
+     */
+    public void setSounds( SoundEffect coinSound, SoundEffect kickSound ) {
+        coins.setSound( coinSound );
+        enemies.setSound( kickSound );
+        parkedEnemies.setSound( kickSound );
+    }
+    
+    public boolean isParallel() {
+        return parallel;
+    }
+    
+    /**
+     * Liga ou desliga a atualização paralela dos inimigos.
+     */
+    public void setParallel( boolean parallel ) {
+        this.parallel = parallel;
+    }
+    
+    public double getStreamingDistance() {
+        return streamingDistance;
+    }
+    
+    /**
+     * Distância, a partir do alvo da câmera, até onde o mundo fica
+     * carregado. Valores menores que a região de ativação dos inimigos são
+     * ampliados.
+     */
+    public void setStreamingDistance( double streamingDistance ) {
+        this.streamingDistance = streamingDistance;
+    }
+    
+    public EnemyStore getParkedEnemies() {
+        return parkedEnemies;
+    }
+    
+    public Level getLevel() {
+        return level;
+    }
+    
+    public Player getPlayer() {
+        return player;
+    }
+    
+    public TileMap getTileMap() {
+        return tileMap;
+    }
+    
+    public CoinStore getCoins() {
+        return coins;
+    }
+    
+    public EnemyStore getEnemies() {
+        return enemies;
+    }
+    
+    public SweepAndPrune getBroadphase() {
+        return broadphase;
+    }
+    
+    public double getActivationMargin() {
+        return activationMargin;
+    }
+    
+    public void setActivationMargin( double activationMargin ) {
+        this.activationMargin = activationMargin;
+    }
+    
+    public double getTime() {
+        return time;
+    }
+    
+    public Camera2D getCamera() {
+        return camera;
+    }
+    
+    public double getWorldWidth() {
+        return worldWidth;
+    }
+    
+    public double getWorldHeight() {
+        return worldHeight;
+    }
+    
+}